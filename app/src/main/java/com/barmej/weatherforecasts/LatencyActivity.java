@@ -0,0 +1,75 @@
+package com.barmej.weatherforecasts;
+
+import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.barmej.weatherforecasts.metrics.FrameMonitor;
+import com.barmej.weatherforecasts.metrics.LatencyMetrics;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Debug LatencyActivity that show the latency percentiles of each stage of a refresh and the
+ * frame stats of the main screen recorded since the app started, see {@link LatencyMetrics} &
+ * {@link FrameMonitor}
+ */
+public class LatencyActivity extends AppCompatActivity {
+
+    private TextView mLatencyTableTextView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_latency);
+        mLatencyTableTextView = findViewById(R.id.latency_table);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showLatencies();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.latency_menu, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+
+        int id = item.getItemId();
+
+        if (id == R.id.action_refresh) {
+            showLatencies();
+            return true;
+        } else if (id == R.id.action_reset) {
+            LatencyMetrics.getInstance().reset();
+            FrameMonitor.getInstance().reset();
+            showLatencies();
+            return true;
+        }
+
+        return super.onOptionsItemSelected(item);
+    }
+
+    /**
+     * Show the latency table of the recorded stages and the frames table
+     */
+    private void showLatencies() {
+        StringWriter table = new StringWriter();
+        PrintWriter writer = new PrintWriter(table);
+        LatencyMetrics.getInstance().dump("", writer);
+        writer.println();
+        FrameMonitor.getInstance().dump("", writer);
+        writer.flush();
+        mLatencyTableTextView.setText(table.toString());
+    }
+
+}
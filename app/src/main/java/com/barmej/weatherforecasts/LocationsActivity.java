@@ -0,0 +1,155 @@
+package com.barmej.weatherforecasts;
+
+import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.barmej.weatherforecasts.adapters.LocationsAdapter;
+import com.barmej.weatherforecasts.entity.City;
+import com.barmej.weatherforecasts.entity.WeatherInfo;
+import com.barmej.weatherforecasts.network.LocationsRefresher;
+import com.barmej.weatherforecasts.utils.SharedPreferencesHelper;
+
+import java.util.List;
+
+/**
+ * LocationsActivity that show the locations saved by the user with their current weather,
+ * picking a location makes it the location shown in MainActivity
+ */
+public class LocationsActivity extends AppCompatActivity implements LocationsAdapter.OnLocationClickListener, LocationsRefresher.Listener {
+
+    /**
+     * RecyclerView adapter of the saved locations
+     */
+    private LocationsAdapter mLocationsAdapter;
+
+    /**
+     * Refreshes the weather of all the saved locations
+     */
+    private LocationsRefresher mLocationsRefresher;
+
+    /**
+     * The locations saved by the user
+     */
+    private List<City> mCities;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_locations);
+
+        // Create new LocationsAdapter and set it to RecyclerView
+        mLocationsAdapter = new LocationsAdapter(this, this);
+        RecyclerView locationsRecyclerView = findViewById(R.id.rv_locations);
+        locationsRecyclerView.setLayoutManager(new LinearLayoutManager(this));
+        locationsRecyclerView.setAdapter(mLocationsAdapter);
+
+        // Refreshes are cancelled when the activity stops
+        mLocationsRefresher = new LocationsRefresher(this, this, this);
+
+        mCities = SharedPreferencesHelper.getSavedLocations(this);
+        mLocationsAdapter.updateData(mCities);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        refreshLocations(false);
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.locations_menu, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+
+        int id = item.getItemId();
+
+        if (id == R.id.action_refresh) {
+            refreshLocations(true);
+            return true;
+        } else if (id == R.id.action_save_location) {
+            saveCurrentLocation();
+            return true;
+        }
+
+        return super.onOptionsItemSelected(item);
+    }
+
+    /**
+     * Show the picked location in MainActivity
+     *
+     * @param city the picked location
+     */
+    @Override
+    public void onLocationClick(City city) {
+        SharedPreferencesHelper.setPreferredWeatherLocation(this, city);
+        setResult(RESULT_OK);
+        finish();
+    }
+
+    /**
+     * Remove the long clicked location from the saved locations
+     *
+     * @param city the long clicked location
+     */
+    @Override
+    public void onLocationLongClick(City city) {
+        mCities.remove(city);
+        SharedPreferencesHelper.setSavedLocations(this, mCities);
+        mLocationsAdapter.updateData(mCities);
+        Toast.makeText(this, getString(R.string.location_removed, city.getName()), Toast.LENGTH_SHORT).show();
+    }
+
+    @Override
+    public void onLocationRefreshed(City city, WeatherInfo weatherInfo) {
+        mLocationsAdapter.setWeatherInfo(city, weatherInfo);
+    }
+
+    @Override
+    public void onLocationRefreshFailed(City city, WeatherInfo lastWeatherInfo) {
+        mLocationsAdapter.setRefreshFailed(city, lastWeatherInfo);
+    }
+
+    @Override
+    public void onRefreshFinished() {
+        // Every location has already been updated on its own
+    }
+
+    /**
+     * Refresh the weather of all the saved locations
+     *
+     * @param interactive true if the user asked for the refresh
+     */
+    private void refreshLocations(boolean interactive) {
+        mLocationsAdapter.setRefreshing();
+        mLocationsRefresher.refresh(mCities, interactive);
+    }
+
+    /**
+     * Add the location currently shown in MainActivity to the saved locations
+     */
+    private void saveCurrentLocation() {
+        City currentCity = SharedPreferencesHelper.getPreferredLocationCity(this);
+        for (City city : mCities) {
+            boolean sameId = currentCity.getId() > 0 && currentCity.getId() == city.getId();
+            if (sameId || currentCity.getName().equalsIgnoreCase(city.getName())) {
+                return;
+            }
+        }
+        mCities.add(currentCity);
+        SharedPreferencesHelper.setSavedLocations(this, mCities);
+        mLocationsAdapter.updateData(mCities);
+        Toast.makeText(this, getString(R.string.location_saved, currentCity.getName()), Toast.LENGTH_SHORT).show();
+        refreshLocations(true);
+    }
+
+}
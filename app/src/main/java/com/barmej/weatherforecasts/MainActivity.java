@@ -14,6 +14,7 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.Lifecycle;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
 import androidx.fragment.app.FragmentPagerAdapter;
@@ -24,33 +25,53 @@ import androidx.viewpager.widget.ViewPager;
 import com.android.volley.Request;
 import com.android.volley.Response;
 import com.android.volley.VolleyError;
-import com.android.volley.toolbox.JsonObjectRequest;
 import com.barmej.weatherforecasts.adapters.DaysForecastAdapter;
 import com.barmej.weatherforecasts.adapters.HoursForecastAdapter;
+import com.barmej.weatherforecasts.cache.WeatherDataCache;
+import com.barmej.weatherforecasts.concurrent.AppExecutors;
+import com.barmej.weatherforecasts.concurrent.TaskScope;
+import com.barmej.weatherforecasts.entity.City;
+import com.barmej.weatherforecasts.entity.Forecast;
 import com.barmej.weatherforecasts.entity.ForecastLists;
 import com.barmej.weatherforecasts.entity.WeatherInfo;
 import com.barmej.weatherforecasts.fragments.PrimaryWeatherInfoFragment;
 import com.barmej.weatherforecasts.fragments.SecondaryWeatherInfoFragment;
+import com.barmej.weatherforecasts.metrics.FrameMonitor;
+import com.barmej.weatherforecasts.metrics.LatencyMetrics;
+import com.barmej.weatherforecasts.metrics.Tracer;
+import com.barmej.weatherforecasts.network.CircuitBreaker;
+import com.barmej.weatherforecasts.network.ForecastStreamRequest;
 import com.barmej.weatherforecasts.network.NetworkUtils;
+import com.barmej.weatherforecasts.network.RequestKey;
+import com.barmej.weatherforecasts.network.WeatherRequest;
 import com.barmej.weatherforecasts.utils.CustomDateUtils;
+import com.barmej.weatherforecasts.utils.Fingerprint;
 import com.barmej.weatherforecasts.utils.OpenWeatherDataParser;
+import com.barmej.weatherforecasts.utils.PreferencesSnapshot;
 import com.barmej.weatherforecasts.utils.SharedPreferencesHelper;
 import com.google.android.material.tabs.TabLayout;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.concurrent.Callable;
 
 /**
  * MainActivity that show current weather info, next hours & days forecasts
  */
-public class MainActivity extends AppCompatActivity {
+public class MainActivity extends AppCompatActivity implements RefreshPipeline.Renderer {
 
     private static final String TAG = MainActivity.class.getSimpleName();
 
     private static final int REQUEST_SETTINGS = 0;
+    private static final int REQUEST_LOCATIONS = 1;
+
+    /**
+     * Maximum age of a cached forecasts horizon that can be reused for the days list
+     */
+    private static final long FULL_FORECASTS_REUSE_MILLIS = 60 * 60 * 1000;
 
     /**
      * FragmentManager to be used in ViewPager FragmentAdapter
@@ -82,6 +103,34 @@ public class MainActivity extends AppCompatActivity {
      */
     private NetworkUtils mNetworkUtils;
 
+    /**
+     * Memory cache of the parsed data of the recently viewed locations
+     */
+    private WeatherDataCache mWeatherDataCache;
+
+    /**
+     * Last received data, kept to re-render it locally when only the measurement system changes
+     */
+    private WeatherInfo mWeatherInfo;
+    private ForecastLists mForecastLists;
+
+    /**
+     * Fingerprints of the shown data, views are only rebound when the received data differs
+     */
+    private long mShownWeatherInfoFingerprint;
+    private long mShownForecastsFingerprint;
+
+    /**
+     * Pipeline of the refresh in progress, its scope is cancelled by the next refresh or when the
+     * activity stops. Results of the requests & tasks of a cancelled scope are dropped
+     */
+    private RefreshPipeline mRefreshPipeline;
+
+    /**
+     * The location that the shown data was requested for
+     */
+    private String mRequestedLocation;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -116,18 +165,24 @@ public class MainActivity extends AppCompatActivity {
         mDaysForecastRecyclerView.setLayoutManager(new LinearLayoutManager(this));
         mDaysForecastRecyclerView.setAdapter(mDaysForecastsAdapter);
 
+        // Record the frames of the screen while the lists scroll or the data is refreshed
+        FrameMonitor frameMonitor = FrameMonitor.getInstance();
+        frameMonitor.attach(this);
+        frameMonitor.track(mHoursForecastsRecyclerView);
+        frameMonitor.track(mDaysForecastRecyclerView);
+
         // Get instance of NetworkUtils
         mNetworkUtils = NetworkUtils.getInstance(this);
 
+        // Get instance of WeatherDataCache
+        mWeatherDataCache = WeatherDataCache.getInstance();
+
         mHeaderLayout.setVisibility(View.INVISIBLE);
         mHoursForecastsRecyclerView.setVisibility(View.INVISIBLE);
         mDaysForecastRecyclerView.setVisibility(View.INVISIBLE);
 
-        // Request current weather data
-        requestWeatherInfo();
-
-        // Request forecasts data
-        requestForecastsInfo();
+        // Request current weather & forecasts data
+        refresh();
 
         // Update window background based on hour of the day
         changeWindowBackground();
@@ -135,10 +190,9 @@ public class MainActivity extends AppCompatActivity {
     }
 
     @Override
-    protected void onStop() {
-        super.onStop();
-        // Cancel ongoing requests
-        mNetworkUtils.cancelRequests(TAG);
+    protected void onDestroy() {
+        super.onDestroy();
+        FrameMonitor.getInstance().detach(this);
     }
 
     /**
@@ -156,6 +210,8 @@ public class MainActivity extends AppCompatActivity {
         MenuInflater inflater = getMenuInflater();
         // Use the inflater's inflate method to inflate main_menu layout
         inflater.inflate(R.menu.main_menu, menu);
+        // The latency metrics are a debugging tool
+        menu.findItem(R.id.action_latency).setVisible(BuildConfig.DEBUG);
         // Return true to display the menu
         return true;
     }
@@ -175,6 +231,14 @@ public class MainActivity extends AppCompatActivity {
             // Open SettingsActivity
             startActivityForResult(new Intent(this, SettingsActivity.class), REQUEST_SETTINGS);
             return true;
+        } else if (id == R.id.action_locations) {
+            // Open LocationsActivity
+            startActivityForResult(new Intent(this, LocationsActivity.class), REQUEST_LOCATIONS);
+            return true;
+        } else if (id == R.id.action_latency) {
+            // Open LatencyActivity
+            startActivity(new Intent(this, LatencyActivity.class));
+            return true;
         }
 
         return super.onOptionsItemSelected(item);
@@ -183,49 +247,173 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
-        if (requestCode == REQUEST_SETTINGS && resultCode == RESULT_OK) {
-            // Request data again with new location and/or units measurements preferences
-            requestWeatherInfo();
-            requestForecastsInfo();
+        if ((requestCode == REQUEST_SETTINGS || requestCode == REQUEST_LOCATIONS) && resultCode == RESULT_OK) {
+            String location = SharedPreferencesHelper.getPreferredWeatherLocation(this);
+            if (location.equals(mRequestedLocation)) {
+                // Data is stored in canonical units, so a units change only needs re-rendering
+                showWeatherInfo();
+                showForecasts();
+            } else {
+                // Request data again with the new location
+                refresh();
+            }
         }
     }
 
+    /**
+     * Dump the latency of each stage of a refresh and the frame stats of the screen with
+     * {@code adb shell dumpsys activity com.barmej.weatherforecasts/.MainActivity}
+     */
+    @Override
+    public void dump(@NonNull String prefix, @Nullable FileDescriptor fd, @NonNull PrintWriter writer, @Nullable String[] args) {
+        super.dump(prefix, fd, writer, args);
+        writer.print(prefix);
+        writer.println("Latency (ms):");
+        LatencyMetrics.getInstance().dump(prefix + "  ", writer);
+        writer.print(prefix);
+        writer.println("Frames (ms):");
+        FrameMonitor.getInstance().dump(prefix + "  ", writer);
+    }
+
+    /**
+     * Show the last received current weather data in the header fragments
+     */
+    private void showWeatherInfo() {
+        if (mWeatherInfo != null) {
+            Tracer.beginSection("MainActivity.showWeatherInfo");
+            mHeaderFragmentAdapter.updateData(mWeatherInfo);
+            mHeaderLayout.setVisibility(View.VISIBLE);
+            Tracer.endSection();
+        }
+    }
+
+    /**
+     * Show the last received forecasts data in the hours & days lists
+     */
+    private void showForecasts() {
+        if (mForecastLists != null) {
+            mHoursForecastAdapter.updateData(mForecastLists.getHoursForecasts());
+            mDaysForecastsAdapter.updateData(mForecastLists.getDaysForecasts());
+            mHoursForecastsRecyclerView.setVisibility(View.VISIBLE);
+            // The days list stays hidden while only the hours forecasts are received
+            if (!mForecastLists.getDaysForecasts().isEmpty()) {
+                mDaysForecastRecyclerView.setVisibility(View.VISIBLE);
+            }
+        }
+    }
+
+
+    /**
+     * Request current weather & forecasts data of the preferred location. The requests of the
+     * previous refresh are cancelled, and any of their results already on the way is dropped,
+     * so that data of a previous location never replaces the data of the new one. Both requests
+     * run concurrently and their results are shown together by the {@link RefreshPipeline}.
+     */
+    private void refresh() {
+        if (mRefreshPipeline != null) {
+            mRefreshPipeline.getScope().cancel();
+        }
+        TaskScope scope = new TaskScope();
+        scope.cancelOn(this, Lifecycle.Event.ON_STOP);
+        scope.onCancel(new Runnable() {
+            @Override
+            public void run() {
+                // Cancel ongoing requests
+                mNetworkUtils.cancelRequests(TAG);
+            }
+        });
+        RefreshPipeline pipeline = new RefreshPipeline(scope, this);
+        mRefreshPipeline = pipeline;
+        requestWeatherInfo(pipeline);
+        requestForecastsInfo(pipeline);
+    }
 
     /**
      * Request current weather data
+     *
+     * @param pipeline pipeline of the refresh
      */
-    private void requestWeatherInfo() {
+    private void requestWeatherInfo(final RefreshPipeline pipeline) {
+
+        // Remember the location we are requesting data for
+        mRequestedLocation = SharedPreferencesHelper.getPreferredWeatherLocation(this);
+
+        // Show the cached data of the location if it is recent enough
+        final City location = SharedPreferencesHelper.getPreferredLocationCity(this);
+        WeatherInfo cachedWeatherInfo = mWeatherDataCache.getWeatherInfo(location);
+        if (cachedWeatherInfo != null) {
+            pipeline.setWeatherInfo(cachedWeatherInfo);
+            return;
+        }
+
+        // The last data of the location, used when the response is unchanged or the request fails
+        final WeatherInfo lastWeatherInfo = mWeatherDataCache.getLastWeatherInfo(location);
 
         // The getWeatherUrl method will return the URL that we need to get the JSON for the current weather
-        String weatherRequestUrl = NetworkUtils.getWeatherUrl(this).toString();
+        String weatherRequestUrl = NetworkUtils.getWeatherUrl(this);
 
         // Request a string response from the provided URL.
-        JsonObjectRequest weatherInfoRequest = new JsonObjectRequest(Request.Method.GET, weatherRequestUrl, null,
-                new Response.Listener<JSONObject>() {
+        WeatherRequest weatherInfoRequest = new WeatherRequest(mNetworkUtils, RequestKey.ENDPOINT_WEATHER, weatherRequestUrl,
+                new WeatherRequest.Listener() {
                     @Override
-                    public void onResponse(JSONObject response) {
-                        Log.d(TAG, "Weather Request Received");
-                        WeatherInfo weatherInfo = null;
-                        try {
-                            // Get WeatherInfo object from json response
-                            weatherInfo = OpenWeatherDataParser.getWeatherInfoObjectFromJson(response);
-                        } catch (JSONException e) {
-                            e.printStackTrace();
+                    public void onResponse(final JSONObject response, final long fingerprint) {
+                        // Drop the results of a cancelled refresh
+                        if (pipeline.isCancelled()) {
+                            return;
                         }
-                        if (weatherInfo != null) {
-                            mHeaderFragmentAdapter.updateData(weatherInfo);
-                            mHeaderLayout.setVisibility(View.VISIBLE);
-                            updateSunriseAndSunsetTimes(weatherInfo);
-                            changeWindowBackground();
+                        Log.d(TAG, "Weather Request Received");
+                        if (WeatherRequest.isUnchanged(response)) {
+                            // Same body as the last data of the location, no need to parse it again
+                            WeatherInfo renewedWeatherInfo = mWeatherDataCache.renewWeatherInfo(location, fingerprint);
+                            pipeline.setWeatherInfo(renewedWeatherInfo != null ? renewedWeatherInfo : lastWeatherInfo);
+                            return;
                         }
+                        pipeline.getScope().submit(AppExecutors.getInstance().cpu(), new Callable<WeatherInfo>() {
+                            @Override
+                            public WeatherInfo call() throws JSONException {
+                                // Get WeatherInfo object from json response
+                                long start = LatencyMetrics.now();
+                                WeatherInfo weatherInfo = OpenWeatherDataParser.getWeatherInfoObjectFromJson(response);
+                                LatencyMetrics.getInstance().record(RequestKey.ENDPOINT_WEATHER, LatencyMetrics.STAGE_PARSE, start);
+                                return weatherInfo;
+                            }
+                        }, new TaskScope.Callback<WeatherInfo>() {
+                            @Override
+                            public void onResult(WeatherInfo weatherInfo) {
+                                if (weatherInfo != null) {
+                                    // The body is only known as parsed once its data is cached
+                                    mWeatherDataCache.putWeatherInfo(location, weatherInfo, fingerprint);
+                                    pipeline.setWeatherInfo(weatherInfo);
+                                } else {
+                                    pipeline.setWeatherInfo(lastWeatherInfo);
+                                }
+                            }
+
+                            @Override
+                            public void onError(Exception e) {
+                                e.printStackTrace();
+                                pipeline.setWeatherInfo(lastWeatherInfo);
+                            }
+                        });
                     }
                 }, new Response.ErrorListener() {
             @Override
             public void onErrorResponse(VolleyError error) {
-                Toast.makeText(MainActivity.this, error.getMessage(), Toast.LENGTH_SHORT).show();
+                if (pipeline.isCancelled()) {
+                    return;
+                }
+                // Fall back to the last data we have for the location, even if it is old
+                pipeline.setWeatherInfo(lastWeatherInfo);
+                showError(error);
             }
         });
 
+        // The header is what the user looks at first, it never waits behind other traffic
+        weatherInfoRequest.setPriority(Request.Priority.IMMEDIATE);
+
+        // Skip parsing when the body hasn't changed since the last data of the location
+        weatherInfoRequest.setSkipUnchanged(mWeatherDataCache.getResponseFingerprint(location));
+
         // Set tag to the request
         weatherInfoRequest.setTag(TAG);
 
@@ -234,50 +422,201 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * Request forecasts data
+     * Request forecasts data. The hours list shows first in any case: when a recent forecasts
+     * horizon can be reused only the hours slots are requested, otherwise the full horizon is
+     * streamed and its hours slots show once parsed, while the rest is still downloading.
+     *
+     * @param pipeline pipeline of the refresh
      */
-    private void requestForecastsInfo() {
+    private void requestForecastsInfo(final RefreshPipeline pipeline) {
+
+        // Show the cached data of the location if it is recent enough
+        final City location = SharedPreferencesHelper.getPreferredLocationCity(this);
+        ForecastLists cachedForecastLists = mWeatherDataCache.getForecastLists(location);
+        if (cachedForecastLists != null) {
+            pipeline.setForecastLists(cachedForecastLists);
+            return;
+        }
 
-        // The getForecastsUrl method will return the URL that we need to get the JSON for the upcoming forecasts
-        String forecastsRequestUrl = NetworkUtils.getForecastUrl(MainActivity.this).toString();
+        // The days forecasts change slowly, a recent horizon only needs the fresh hours merged in
+        ForecastLists recentForecastLists = mWeatherDataCache.getForecastLists(location, FULL_FORECASTS_REUSE_MILLIS);
+        if (recentForecastLists != null) {
+            requestHoursForecastsInfo(location, recentForecastLists, pipeline);
+        } else {
+            streamForecastsInfo(location, pipeline);
+        }
+    }
+
+    /**
+     * Request the hours forecasts only and merge them into a recent forecasts horizon
+     *
+     * @param location            the location of the forecasts
+     * @param recentForecastLists recent forecasts of the location for the days list
+     * @param pipeline            pipeline of the refresh
+     */
+    private void requestHoursForecastsInfo(final City location, final ForecastLists recentForecastLists, final RefreshPipeline pipeline) {
+
+        // The getHoursForecastUrl method will return the URL that we need to get the JSON for the next hours forecasts
+        String hoursForecastsRequestUrl = NetworkUtils.getHoursForecastUrl(MainActivity.this);
 
         // Request a string response from the provided URL.
-        JsonObjectRequest forecastsListRequest = new JsonObjectRequest(Request.Method.GET, forecastsRequestUrl, null,
+        WeatherRequest hoursForecastsRequest = new WeatherRequest(mNetworkUtils, RequestKey.ENDPOINT_FORECAST, hoursForecastsRequestUrl,
                 new Response.Listener<JSONObject>() {
                     @Override
-                    public void onResponse(JSONObject response) {
-                        Log.d(TAG, "Forecasts Request Received");
-                        ForecastLists forecastLists = null;
-                        try {
-                            // Get ForecastLists object from json response
-                            forecastLists = OpenWeatherDataParser.getForecastsDataFromJson(response);
-                        } catch (JSONException e) {
-                            e.printStackTrace();
-                        }
-                        if (forecastLists != null
-                                && forecastLists.getHoursForecasts() != null
-                                && forecastLists.getDaysForecasts() != null) {
-                            mHoursForecastAdapter.updateData(forecastLists.getHoursForecasts());
-                            mDaysForecastsAdapter.updateData(forecastLists.getDaysForecasts());
-                            mHoursForecastsRecyclerView.setVisibility(View.VISIBLE);
-                            mDaysForecastRecyclerView.setVisibility(View.VISIBLE);
+                    public void onResponse(final JSONObject response) {
+                        if (pipeline.isCancelled()) {
+                            return;
                         }
+                        Log.d(TAG, "Hours Forecasts Request Received");
+                        pipeline.getScope().submit(AppExecutors.getInstance().cpu(), new Callable<ForecastLists>() {
+                            @Override
+                            public ForecastLists call() throws JSONException {
+                                // Get ForecastLists object with the hours forecasts only from json response
+                                long start = LatencyMetrics.now();
+                                ForecastLists hoursForecastLists = OpenWeatherDataParser.getHoursForecastsFromJson(response);
+                                LatencyMetrics.getInstance().record(RequestKey.ENDPOINT_FORECAST, LatencyMetrics.STAGE_PARSE, start);
+                                if (hoursForecastLists == null) {
+                                    return recentForecastLists;
+                                }
+                                return OpenWeatherDataParser.mergeForecasts(hoursForecastLists, recentForecastLists);
+                            }
+                        }, new TaskScope.Callback<ForecastLists>() {
+                            @Override
+                            public void onResult(ForecastLists forecastLists) {
+                                // Without hours in the response the recent forecasts are shown as they are
+                                if (forecastLists != recentForecastLists) {
+                                    mWeatherDataCache.putMergedForecastLists(location, forecastLists, recentForecastLists);
+                                }
+                                pipeline.setForecastLists(forecastLists);
+                            }
+
+                            @Override
+                            public void onError(Exception e) {
+                                e.printStackTrace();
+                                pipeline.setForecastLists(recentForecastLists);
+                            }
+                        });
                     }
                 }, new Response.ErrorListener() {
             @Override
             public void onErrorResponse(VolleyError error) {
-                Toast.makeText(MainActivity.this, error.getMessage(), Toast.LENGTH_SHORT).show();
+                if (pipeline.isCancelled()) {
+                    return;
+                }
+                // Fall back to the last data we have for the location
+                pipeline.setForecastLists(mWeatherDataCache.getLastForecastLists(location));
+                showError(error);
             }
         });
 
+        // The hours list is right below the header, it comes before the rest of the forecasts
+        hoursForecastsRequest.setPriority(Request.Priority.HIGH);
+
         // Set tag to the request
-        forecastsListRequest.setTag(TAG);
+        hoursForecastsRequest.setTag(TAG);
 
         // Add the request to the RequestQueue.
-        mNetworkUtils.addToRequestQueue(forecastsListRequest);
+        mNetworkUtils.addToRequestQueue(hoursForecastsRequest);
 
     }
 
+    /**
+     * Stream the full forecasts horizon, the hours slots are handed to the pipeline as they are parsed
+     *
+     * @param location the location of the forecasts
+     * @param pipeline pipeline of the refresh
+     */
+    private void streamForecastsInfo(final City location, final RefreshPipeline pipeline) {
+
+        // The getForecastsUrl method will return the URL that we need to get the JSON for the upcoming forecasts
+        String forecastsRequestUrl = NetworkUtils.getForecastUrl(MainActivity.this);
+
+        ForecastStreamRequest forecastsStreamRequest = new ForecastStreamRequest(mNetworkUtils, forecastsRequestUrl,
+                new ForecastStreamRequest.Listener() {
+                    @Override
+                    public void onHourForecastReceived(Forecast forecast, int index) {
+                        if (pipeline.isCancelled()) {
+                            return;
+                        }
+                        pipeline.addHourForecast(forecast, index);
+                    }
+
+                    @Override
+                    public void onForecastsReceived(ForecastLists forecastLists) {
+                        if (pipeline.isCancelled()) {
+                            return;
+                        }
+                        Log.d(TAG, "Forecasts Request Received");
+                        mWeatherDataCache.putForecastLists(location, forecastLists);
+                        pipeline.setForecastLists(forecastLists);
+                    }
+
+                    @Override
+                    public void onErrorResponse(VolleyError error) {
+                        if (pipeline.isCancelled()) {
+                            return;
+                        }
+                        // Fall back to the last data we have for the location, even if it is old
+                        pipeline.setForecastLists(mWeatherDataCache.getLastForecastLists(location));
+                        showError(error);
+                    }
+                });
+
+        // Set tag to the request
+        forecastsStreamRequest.setTag(TAG);
+
+        // Send the request
+        mNetworkUtils.addToStreamQueue(forecastsStreamRequest);
+
+    }
+
+    /**
+     * Tell the user that the data couldn't be updated
+     *
+     * @param error the request error
+     */
+    private void showError(VolleyError error) {
+        if (error instanceof CircuitBreaker.OpenCircuitError) {
+            Toast.makeText(MainActivity.this, R.string.weather_service_unavailable, Toast.LENGTH_SHORT).show();
+        } else {
+            Toast.makeText(MainActivity.this, error.getMessage(), Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    /**
+     * Show the joined results of a refresh in one go: the header, the forecasts lists and the
+     * window background. Views are only rebound for the data that differs from the shown data.
+     *
+     * @param weatherInfo   current weather info, null if there's nothing new to show
+     * @param forecastLists hours & days forecasts, null if there's nothing new to show
+     */
+    @Override
+    public void render(WeatherInfo weatherInfo, ForecastLists forecastLists) {
+        Tracer.beginSection("MainActivity.render");
+        FrameMonitor.getInstance().markStage(FrameMonitor.STAGE_COMMIT);
+        if (weatherInfo != null) {
+            mWeatherInfo = weatherInfo;
+            long fingerprint = Fingerprint.of(weatherInfo);
+            if (fingerprint != mShownWeatherInfoFingerprint) {
+                mShownWeatherInfoFingerprint = fingerprint;
+                long start = LatencyMetrics.now();
+                showWeatherInfo();
+                LatencyMetrics.getInstance().record(RequestKey.ENDPOINT_WEATHER, LatencyMetrics.STAGE_BIND, start);
+            }
+            updateSunriseAndSunsetTimes(weatherInfo);
+        }
+        if (forecastLists != null) {
+            mForecastLists = forecastLists;
+            long fingerprint = Fingerprint.of(forecastLists);
+            if (fingerprint != mShownForecastsFingerprint) {
+                mShownForecastsFingerprint = fingerprint;
+                showForecasts();
+            }
+        }
+        changeWindowBackground();
+        Tracer.endSection();
+    }
+
     /**
      * Update sunrise hour and sunset hour saved in the SharedPreferences
      *
@@ -285,9 +624,8 @@ public class MainActivity extends AppCompatActivity {
      */
     private void updateSunriseAndSunsetTimes(WeatherInfo weatherInfo) {
         int sunriseHour = CustomDateUtils.getHourOfDayAsInteger(weatherInfo.getSys().getSunrise());
-        SharedPreferencesHelper.setSunriseHour(MainActivity.this, sunriseHour);
         int sunsetHour = CustomDateUtils.getHourOfDayAsInteger(weatherInfo.getSys().getSunset());
-        SharedPreferencesHelper.setSunsetHour(MainActivity.this, sunsetHour);
+        SharedPreferencesHelper.setSunriseAndSunsetHours(MainActivity.this, sunriseHour, sunsetHour);
     }
 
     /**
@@ -295,8 +633,10 @@ public class MainActivity extends AppCompatActivity {
      * The hour will be used to determine if it's morning, afternoon or evening
      */
     private void changeWindowBackground() {
-        int sunriseHour = SharedPreferencesHelper.getSunriseHour(this);
-        int sunsetHour = SharedPreferencesHelper.getSunsetHour(this);
+        Tracer.beginSection("MainActivity.changeWindowBackground");
+        PreferencesSnapshot preferences = SharedPreferencesHelper.getSnapshot(this);
+        int sunriseHour = preferences.getSunriseHour();
+        int sunsetHour = preferences.getSunsetHour();
         long middayHour = sunriseHour + (sunsetHour - sunriseHour) / 2;
         long currentHour = CustomDateUtils.getHourOfDayAsInteger(System.currentTimeMillis() / 1000);
         if (currentHour >= sunriseHour && currentHour < middayHour) {
@@ -306,6 +646,7 @@ public class MainActivity extends AppCompatActivity {
         } else {
             getWindow().getDecorView().setBackgroundResource(R.drawable.shape_main_evening_background);
         }
+        Tracer.endSection();
     }
 
     /**
@@ -313,16 +654,23 @@ public class MainActivity extends AppCompatActivity {
      */
     class HeaderFragmentAdapter extends FragmentPagerAdapter {
 
-        private List<Fragment> fragments;
+        /**
+         * Fragments instantiated by the ViewPager, by position, null until instantiated
+         */
+        private final Fragment[] fragments = new Fragment[2];
+
+        /**
+         * The last weather info, given to the fragments instantiated after it was received
+         */
+        private WeatherInfo weatherInfo;
 
         HeaderFragmentAdapter(FragmentManager fm) {
             super(fm);
-            this.fragments = new ArrayList<>();
         }
 
         @Override
         public int getCount() {
-            return 2;
+            return fragments.length;
         }
 
         @Override
@@ -338,20 +686,36 @@ public class MainActivity extends AppCompatActivity {
 
         @Override
         public @NonNull Object instantiateItem(@NonNull ViewGroup container, int position) {
-            // Update the array list to refer to the instantiated fragments
+            // Keep a reference to the instantiated fragments, new or restored by the FragmentManager
             Fragment fragment = (Fragment) super.instantiateItem(container, position);
-            fragments.add(position,fragment);
+            fragments[position] = fragment;
+            if (weatherInfo != null) {
+                updateFragment(fragment, weatherInfo);
+            }
             return fragment;
         }
 
         /*
-         * Update data presented in the fragments of the ViewPager
+         * Update data presented in the fragments of the ViewPager, the fragments that aren't
+         * instantiated yet get it when they are
          *
          * @param weatherInfo WeatherInfo object that contain the new data
          */
         void updateData(WeatherInfo weatherInfo) {
-            ((PrimaryWeatherInfoFragment) fragments.get(0)).updateWeatherInfo(weatherInfo);
-            ((SecondaryWeatherInfoFragment) fragments.get(1)).updateWeatherInfo(weatherInfo);
+            this.weatherInfo = weatherInfo;
+            for (Fragment fragment : fragments) {
+                if (fragment != null) {
+                    updateFragment(fragment, weatherInfo);
+                }
+            }
+        }
+
+        private void updateFragment(Fragment fragment, WeatherInfo weatherInfo) {
+            if (fragment instanceof PrimaryWeatherInfoFragment) {
+                ((PrimaryWeatherInfoFragment) fragment).updateWeatherInfo(weatherInfo);
+            } else if (fragment instanceof SecondaryWeatherInfoFragment) {
+                ((SecondaryWeatherInfoFragment) fragment).updateWeatherInfo(weatherInfo);
+            }
         }
 
     }
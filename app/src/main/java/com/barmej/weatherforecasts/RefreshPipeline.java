@@ -0,0 +1,177 @@
+package com.barmej.weatherforecasts;
+
+import android.view.Choreographer;
+
+import com.barmej.weatherforecasts.concurrent.TaskScope;
+import com.barmej.weatherforecasts.entity.Forecast;
+import com.barmej.weatherforecasts.entity.ForecastLists;
+import com.barmej.weatherforecasts.entity.WeatherInfo;
+import com.barmej.weatherforecasts.utils.OpenWeatherDataParser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Joins the results of a refresh of the main screen, so that the header, the forecasts lists and
+ * the window background are updated together in a single commit on the next frame, instead of
+ * each of them popping in with its own layout pass.
+ * <p>
+ * The first commit waits for the current weather and for the hours forecasts, which are ready
+ * either with the full forecasts or as soon as all the hours slots are streamed. A part that
+ * settles after the first commit, e.g the days of streamed forecasts, is committed on the next
+ * frame. A part that fails without any data to show counts as settled.
+ * <p>
+ * All methods must be called on the main thread. Nothing is committed once the scope of the
+ * refresh is cancelled.
+ */
+class RefreshPipeline implements Choreographer.FrameCallback {
+
+    /**
+     * Interface used to apply a commit to the UI
+     */
+    interface Renderer {
+
+        /**
+         * @param weatherInfo   current weather to show, null if there's nothing new to show
+         * @param forecastLists forecasts to show, null if there's nothing new to show
+         */
+        void render(WeatherInfo weatherInfo, ForecastLists forecastLists);
+
+    }
+
+    private final TaskScope mScope;
+
+    private final Renderer mRenderer;
+
+    /*
+     * Current weather, and whether it was received since the last commit
+     */
+    private boolean mWeatherSettled;
+    private WeatherInfo mWeatherInfo;
+    private boolean mWeatherChanged;
+
+    /*
+     * Forecasts, and whether they were received since the last commit
+     */
+    private boolean mForecastsSettled;
+    private ForecastLists mForecastLists;
+    private boolean mForecastsChanged;
+
+    /**
+     * Hours slots received while the forecasts are streamed
+     */
+    private final List<Forecast> mStreamedHoursForecasts = new ArrayList<>();
+
+    private boolean mCommitted;
+
+    private boolean mFrameScheduled;
+
+    /**
+     * @param scope    scope of the refresh, cancelling it drops the pending commit
+     * @param renderer renderer applying the commits
+     */
+    RefreshPipeline(TaskScope scope, Renderer renderer) {
+        mScope = scope;
+        mRenderer = renderer;
+        scope.onCancel(new Runnable() {
+            @Override
+            public void run() {
+                if (mFrameScheduled) {
+                    mFrameScheduled = false;
+                    Choreographer.getInstance().removeFrameCallback(RefreshPipeline.this);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return scope of the refresh
+     */
+    TaskScope getScope() {
+        return mScope;
+    }
+
+    /**
+     * @return true if the refresh is cancelled, its results are dropped
+     */
+    boolean isCancelled() {
+        return mScope.isCancelled();
+    }
+
+    /**
+     * @param weatherInfo current weather, null if it failed without any data to show
+     */
+    void setWeatherInfo(WeatherInfo weatherInfo) {
+        mWeatherSettled = true;
+        if (weatherInfo != null) {
+            mWeatherInfo = weatherInfo;
+            mWeatherChanged = true;
+        }
+        scheduleCommit();
+    }
+
+    /**
+     * @param forecast a streamed slot of the hours forecasts
+     * @param index    position of the slot
+     */
+    void addHourForecast(Forecast forecast, int index) {
+        if (mForecastsSettled || index != mStreamedHoursForecasts.size()) {
+            return;
+        }
+        mStreamedHoursForecasts.add(forecast);
+        if (mStreamedHoursForecasts.size() == OpenWeatherDataParser.HOURS_FORECASTS_COUNT) {
+            // The hours list is complete, it doesn't have to wait for the days
+            ForecastLists hoursForecastLists = new ForecastLists();
+            hoursForecastLists.setHoursForecasts(new ArrayList<>(mStreamedHoursForecasts));
+            hoursForecastLists.setDaysForecasts(new ArrayList<List<Forecast>>());
+            mForecastLists = hoursForecastLists;
+            mForecastsChanged = true;
+            scheduleCommit();
+        }
+    }
+
+    /**
+     * @param forecastLists forecasts, null if they failed without any data to show
+     */
+    void setForecastLists(ForecastLists forecastLists) {
+        mForecastsSettled = true;
+        if (forecastLists != null) {
+            mForecastLists = forecastLists;
+            mForecastsChanged = true;
+        }
+        scheduleCommit();
+    }
+
+    /**
+     * Commit on the next frame once the first commit is ready, and after it whenever there's
+     * something new to show
+     */
+    private void scheduleCommit() {
+        if (mFrameScheduled || mScope.isCancelled()) {
+            return;
+        }
+        boolean ready = mCommitted || (mWeatherSettled && (mForecastsSettled || mForecastLists != null));
+        if (ready) {
+            mFrameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mFrameScheduled = false;
+        if (mScope.isCancelled()) {
+            return;
+        }
+        WeatherInfo weatherInfo = mWeatherChanged ? mWeatherInfo : null;
+        ForecastLists forecastLists = mForecastsChanged ? mForecastLists : null;
+        mWeatherChanged = false;
+        mForecastsChanged = false;
+        if (mCommitted && weatherInfo == null && forecastLists == null) {
+            return;
+        }
+        mCommitted = true;
+        mRenderer.render(weatherInfo, forecastLists);
+    }
+
+}
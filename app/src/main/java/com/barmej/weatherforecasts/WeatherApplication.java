@@ -0,0 +1,35 @@
+package com.barmej.weatherforecasts;
+
+import android.app.Application;
+
+import com.barmej.weatherforecasts.cache.CacheRegistry;
+import com.barmej.weatherforecasts.cache.WeatherDataCache;
+import com.barmej.weatherforecasts.metrics.Tracer;
+import com.barmej.weatherforecasts.network.NetworkUtils;
+import com.barmej.weatherforecasts.utils.SharedPreferencesHelper;
+import com.barmej.weatherforecasts.utils.WeatherUtils;
+
+/**
+ * Application class that registers the app caches and releases their memory when the system
+ * asks for it
+ */
+public class WeatherApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        Tracer.init();
+        SharedPreferencesHelper.preload(this);
+        CacheRegistry cacheRegistry = CacheRegistry.getInstance();
+        cacheRegistry.register("Formatted temperatures", WeatherUtils.getTemperatureStringsCache(), CacheRegistry.PRIORITY_LOW);
+        cacheRegistry.register("Parsed weather data", WeatherDataCache.getInstance(), CacheRegistry.PRIORITY_NORMAL);
+        cacheRegistry.register("Http responses", NetworkUtils.getInstance(this).getHttpCache(), CacheRegistry.PRIORITY_HIGH);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        CacheRegistry.getInstance().onTrimMemory(level);
+    }
+
+}
@@ -12,6 +12,10 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.barmej.weatherforecasts.R;
 import com.barmej.weatherforecasts.entity.Forecast;
+import com.barmej.weatherforecasts.metrics.FrameMonitor;
+import com.barmej.weatherforecasts.metrics.LatencyMetrics;
+import com.barmej.weatherforecasts.metrics.Tracer;
+import com.barmej.weatherforecasts.network.RequestKey;
 import com.barmej.weatherforecasts.utils.CustomDateUtils;
 import com.barmej.weatherforecasts.utils.WeatherUtils;
 
@@ -51,8 +55,11 @@ public class DaysForecastAdapter extends RecyclerView.Adapter<DaysForecastAdapte
      */
     @Override
     public @NonNull ForecastAdapterViewHolder onCreateViewHolder(@NonNull ViewGroup viewGroup, int viewType) {
+        Tracer.beginSection("DaysForecastAdapter.onCreateViewHolder");
         View view = LayoutInflater.from(mContext).inflate(R.layout.item_day_forecast, viewGroup, false);
-        return new ForecastAdapterViewHolder(view);
+        ForecastAdapterViewHolder viewHolder = new ForecastAdapterViewHolder(view);
+        Tracer.endSection();
+        return viewHolder;
     }
 
     /**
@@ -68,6 +75,10 @@ public class DaysForecastAdapter extends RecyclerView.Adapter<DaysForecastAdapte
     @Override
     public void onBindViewHolder(@NonNull ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
 
+        Tracer.beginSection("DaysForecastAdapter.onBindViewHolder");
+        FrameMonitor.getInstance().markStage(FrameMonitor.STAGE_BIND);
+        long start = LatencyMetrics.now();
+
         Forecast forecast = mForecasts.get(position).get(0);
 
         /* Weather Icon ************************************************************************* */
@@ -89,7 +100,7 @@ public class DaysForecastAdapter extends RecyclerView.Adapter<DaysForecastAdapte
         /* Weather Description ****************************************************************** */
 
         // Get weather condition description
-        String description = forecast.getWeather().get(0).getDescription();
+        String description = WeatherUtils.getWeatherCondition(mContext, forecast.getWeather().get(0));
 
         // Display weather description
         forecastAdapterViewHolder.descriptionTextView.setText(description);
@@ -108,7 +119,7 @@ public class DaysForecastAdapter extends RecyclerView.Adapter<DaysForecastAdapte
         double highTemperature = forecast.getMain().getTempMax();
 
         // Get formatted high temperature string
-        String highTemperatureString = mContext.getString(R.string.format_temperature, highTemperature);
+        String highTemperatureString = WeatherUtils.getFormattedTemperature(mContext, highTemperature);
 
         // Display high temperature
         forecastAdapterViewHolder.highTempTextView.setText(highTemperatureString);
@@ -126,7 +137,7 @@ public class DaysForecastAdapter extends RecyclerView.Adapter<DaysForecastAdapte
         double lowTemperature = forecast.getMain().getTempMin();
 
         // Get formatted low temperature string
-        String lowTemperatureString = mContext.getString(R.string.format_temperature, lowTemperature);
+        String lowTemperatureString = WeatherUtils.getFormattedTemperature(mContext, lowTemperature);
 
         // Display low temperature
         forecastAdapterViewHolder.lowTempTextView.setText(lowTemperatureString);
@@ -137,6 +148,8 @@ public class DaysForecastAdapter extends RecyclerView.Adapter<DaysForecastAdapte
         // Set content description (for accessibility purposes)
         forecastAdapterViewHolder.lowTempTextView.setContentDescription(lowTemperatureAccessibility);
 
+        LatencyMetrics.getInstance().record(RequestKey.ENDPOINT_FORECAST, LatencyMetrics.STAGE_BIND, start);
+        Tracer.endSection();
     }
 
     /**
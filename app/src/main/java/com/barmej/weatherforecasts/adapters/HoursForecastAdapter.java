@@ -12,6 +12,10 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.barmej.weatherforecasts.R;
 import com.barmej.weatherforecasts.entity.Forecast;
+import com.barmej.weatherforecasts.metrics.FrameMonitor;
+import com.barmej.weatherforecasts.metrics.LatencyMetrics;
+import com.barmej.weatherforecasts.metrics.Tracer;
+import com.barmej.weatherforecasts.network.RequestKey;
 import com.barmej.weatherforecasts.utils.CustomDateUtils;
 import com.barmej.weatherforecasts.utils.WeatherUtils;
 
@@ -55,8 +59,11 @@ public class HoursForecastAdapter extends RecyclerView.Adapter<HoursForecastAdap
      */
     @Override
     public @NonNull ForecastAdapterViewHolder onCreateViewHolder(@NonNull ViewGroup viewGroup, int viewType) {
+        Tracer.beginSection("HoursForecastAdapter.onCreateViewHolder");
         View view = LayoutInflater.from(mContext).inflate(R.layout.item_hour_forecast, viewGroup, false);
-        return new ForecastAdapterViewHolder(view);
+        ForecastAdapterViewHolder viewHolder = new ForecastAdapterViewHolder(view);
+        Tracer.endSection();
+        return viewHolder;
     }
 
     /**
@@ -72,6 +79,10 @@ public class HoursForecastAdapter extends RecyclerView.Adapter<HoursForecastAdap
     @Override
     public void onBindViewHolder(@NonNull ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
 
+        Tracer.beginSection("HoursForecastAdapter.onBindViewHolder");
+        FrameMonitor.getInstance().markStage(FrameMonitor.STAGE_BIND);
+        long start = LatencyMetrics.now();
+
         Forecast forecast = mForecasts.get(position);
 
         /* Weather Icon ************************************************************************* */
@@ -83,7 +94,7 @@ public class HoursForecastAdapter extends RecyclerView.Adapter<HoursForecastAdap
         forecastAdapterViewHolder.iconImageView.setImageResource(weatherImageId);
 
         // Get weather condition description
-        String description = forecast.getWeather().get(0).getDescription();
+        String description = WeatherUtils.getWeatherCondition(mContext, forecast.getWeather().get(0));
 
         // Create the accessibility String from the weather description
         String descriptionAccessibility = mContext.getString(R.string.access_forecast, description);
@@ -105,7 +116,7 @@ public class HoursForecastAdapter extends RecyclerView.Adapter<HoursForecastAdap
         double highTemperature = forecast.getMain().getTempMax();
 
         // Get formatted high temperature string
-        String highTemperatureString = mContext.getString(R.string.format_temperature, highTemperature);
+        String highTemperatureString = WeatherUtils.getFormattedTemperature(mContext, highTemperature);
 
         // Display high temperature
         forecastAdapterViewHolder.temperatureTextView.setText(highTemperatureString);
@@ -116,6 +127,8 @@ public class HoursForecastAdapter extends RecyclerView.Adapter<HoursForecastAdap
         // Set content description (for accessibility purposes)
         forecastAdapterViewHolder.temperatureTextView.setContentDescription(highTemperatureAccessibility);
 
+        LatencyMetrics.getInstance().record(RequestKey.ENDPOINT_FORECAST, LatencyMetrics.STAGE_BIND, start);
+        Tracer.endSection();
     }
 
     /**
@@ -0,0 +1,247 @@
+package com.barmej.weatherforecasts.adapters;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.barmej.weatherforecasts.R;
+import com.barmej.weatherforecasts.entity.City;
+import com.barmej.weatherforecasts.entity.Weather;
+import com.barmej.weatherforecasts.entity.WeatherInfo;
+import com.barmej.weatherforecasts.utils.Fingerprint;
+import com.barmej.weatherforecasts.utils.WeatherUtils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link LocationsAdapter} exposes the locations saved by the user with their current weather
+ * to a {@link RecyclerView}. Each location row gets updated on its own as soon as its weather
+ * is refreshed.
+ */
+public class LocationsAdapter extends RecyclerView.Adapter<LocationsAdapter.LocationAdapterViewHolder> {
+
+    /**
+     * Opacity of the rows showing the last known weather of a location that couldn't be refreshed
+     */
+    private static final float STALE_ALPHA = 0.5f;
+
+    /**
+     * Interface used to handle clicks on the locations
+     */
+    public interface OnLocationClickListener {
+
+        void onLocationClick(City city);
+
+        void onLocationLongClick(City city);
+
+    }
+
+    /**
+     * The context to access app resources and inflate layouts
+     */
+    private final Context mContext;
+
+    private final OnLocationClickListener mOnLocationClickListener;
+
+    private List<City> mCities = new ArrayList<>();
+
+    /**
+     * Last received weather of each location
+     */
+    private Map<City, WeatherInfo> mWeatherInfo = new IdentityHashMap<>();
+
+    /**
+     * Locations that are being refreshed
+     */
+    private Set<City> mRefreshingCities = new HashSet<>();
+
+    /**
+     * Locations whose last refresh has failed, their rows show the last known weather faded
+     */
+    private Set<City> mStaleCities = new HashSet<>();
+
+    /**
+     * LocationsAdapter constructor
+     *
+     * @param context                 Used to access the the UI and app resources
+     * @param onLocationClickListener Listener to notify when a location is clicked
+     */
+    public LocationsAdapter(@NonNull Context context, @NonNull OnLocationClickListener onLocationClickListener) {
+        mContext = context;
+        mOnLocationClickListener = onLocationClickListener;
+    }
+
+    @Override
+    public @NonNull LocationAdapterViewHolder onCreateViewHolder(@NonNull ViewGroup viewGroup, int viewType) {
+        View view = LayoutInflater.from(mContext).inflate(R.layout.item_location, viewGroup, false);
+        return new LocationAdapterViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull LocationAdapterViewHolder locationAdapterViewHolder, int position) {
+
+        City city = mCities.get(position);
+
+        // Display location name
+        locationAdapterViewHolder.nameTextView.setText(city.getName());
+
+        // Show a progress bar instead of the temperature while the location is refreshed
+        boolean refreshing = mRefreshingCities.contains(city);
+        locationAdapterViewHolder.progressBar.setVisibility(refreshing ? View.VISIBLE : View.GONE);
+        locationAdapterViewHolder.temperatureTextView.setVisibility(refreshing ? View.INVISIBLE : View.VISIBLE);
+        locationAdapterViewHolder.itemView.setAlpha(mStaleCities.contains(city) ? STALE_ALPHA : 1f);
+
+        WeatherInfo weatherInfo = mWeatherInfo.get(city);
+        if (weatherInfo == null) {
+            locationAdapterViewHolder.iconImageView.setImageDrawable(null);
+            locationAdapterViewHolder.descriptionTextView.setText(null);
+            locationAdapterViewHolder.temperatureTextView.setText(null);
+            return;
+        }
+
+        Weather weather = weatherInfo.getWeather().get(0);
+
+        // Display weather condition icon
+        locationAdapterViewHolder.iconImageView.setImageResource(WeatherUtils.getWeatherIcon(weather.getIcon()));
+
+        // Display weather description
+        String description = WeatherUtils.getWeatherCondition(mContext, weather);
+        locationAdapterViewHolder.descriptionTextView.setText(description);
+
+        // Set content description (for accessibility purposes)
+        String descriptionAccessibility = mContext.getString(R.string.access_forecast, description);
+        locationAdapterViewHolder.iconImageView.setContentDescription(descriptionAccessibility);
+
+        // Display current temperature
+        String temperature = WeatherUtils.getFormattedTemperature(mContext, weatherInfo.getMain().getTemp());
+        locationAdapterViewHolder.temperatureTextView.setText(temperature);
+    }
+
+    /**
+     * This method simply returns the number of items to display.
+     *
+     * @return The number of items available to display
+     */
+    @Override
+    public int getItemCount() {
+        return mCities.size();
+    }
+
+    /**
+     * A ViewHolder is a required part of the pattern for RecyclerViews. It mostly behaves as
+     * a cache of the child views for a list item.
+     */
+    class LocationAdapterViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener, View.OnLongClickListener {
+
+        final ImageView iconImageView;
+        final TextView nameTextView;
+        final TextView descriptionTextView;
+        final TextView temperatureTextView;
+        final ProgressBar progressBar;
+
+        LocationAdapterViewHolder(View view) {
+            super(view);
+            iconImageView = view.findViewById(R.id.weather_icon);
+            nameTextView = view.findViewById(R.id.location_name);
+            descriptionTextView = view.findViewById(R.id.weather_description);
+            temperatureTextView = view.findViewById(R.id.temperature);
+            progressBar = view.findViewById(R.id.progress);
+            view.setOnClickListener(this);
+            view.setOnLongClickListener(this);
+        }
+
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                mOnLocationClickListener.onLocationClick(mCities.get(position));
+            }
+        }
+
+        @Override
+        public boolean onLongClick(View view) {
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                mOnLocationClickListener.onLocationLongClick(mCities.get(position));
+                return true;
+            }
+            return false;
+        }
+
+    }
+
+    /**
+     * Update the locations list, the weather of the locations that are still in the list is kept
+     *
+     * @param cities the saved locations
+     */
+    public void updateData(List<City> cities) {
+        mCities = new ArrayList<>(cities);
+        mWeatherInfo.keySet().retainAll(mCities);
+        mRefreshingCities.retainAll(mCities);
+        mStaleCities.retainAll(mCities);
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Mark all the locations as being refreshed
+     */
+    public void setRefreshing() {
+        mRefreshingCities.addAll(mCities);
+        notifyItemRangeChanged(0, mCities.size());
+    }
+
+    /**
+     * Show the new weather of a single location
+     *
+     * @param city        the refreshed location
+     * @param weatherInfo the current weather of the location
+     */
+    public void setWeatherInfo(City city, WeatherInfo weatherInfo) {
+        int position = mCities.indexOf(city);
+        if (position < 0) {
+            return;
+        }
+        boolean wasRefreshing = mRefreshingCities.remove(city);
+        boolean wasStale = mStaleCities.remove(city);
+        WeatherInfo shownWeatherInfo = mWeatherInfo.put(city, weatherInfo);
+        if (!wasRefreshing && !wasStale && shownWeatherInfo != null
+                && Fingerprint.of(shownWeatherInfo) == Fingerprint.of(weatherInfo)) {
+            // The row already shows the same weather
+            return;
+        }
+        notifyItemChanged(position);
+    }
+
+    /**
+     * Mark a single location as not refreshed, showing its last known weather faded
+     *
+     * @param city            the location that couldn't be refreshed
+     * @param lastWeatherInfo the last known weather of the location, null to keep the shown one
+     */
+    public void setRefreshFailed(City city, WeatherInfo lastWeatherInfo) {
+        int position = mCities.indexOf(city);
+        if (position < 0) {
+            return;
+        }
+        mRefreshingCities.remove(city);
+        mStaleCities.add(city);
+        if (lastWeatherInfo != null) {
+            mWeatherInfo.put(city, lastWeatherInfo);
+        }
+        notifyItemChanged(position);
+    }
+
+}
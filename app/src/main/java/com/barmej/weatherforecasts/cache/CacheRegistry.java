@@ -0,0 +1,146 @@
+package com.barmej.weatherforecasts.cache;
+
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Central registry of the app caches, it releases their memory in tiers when the system reports
+ * memory pressure through {@link ComponentCallbacks2#onTrimMemory(int)}.
+ * <p>
+ * Every cache registers with a priority, the caches that are the cheapest to rebuild have the
+ * lowest priority. As the trim level rises, the lowest priority tier is halved then cleared before
+ * the next tier is touched, so hot data stays resident for as long as possible.
+ */
+public final class CacheRegistry {
+
+    private static final String TAG = CacheRegistry.class.getSimpleName();
+
+    /**
+     * Cache priorities, in the order their tiers are evicted
+     */
+    public static final int PRIORITY_LOW = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_HIGH = 2;
+
+    /**
+     * Object used for the purpose of synchronize lock
+     */
+    private static final Object LOCK = new Object();
+
+    /**
+     * Instance of this class for Singleton
+     */
+    private static CacheRegistry sInstance;
+
+    /**
+     * A registered cache with its name and priority
+     */
+    private static final class Registration {
+
+        final String name;
+        final TrimmableCache cache;
+        final int priority;
+
+        Registration(String name, TrimmableCache cache, int priority) {
+            this.name = name;
+            this.cache = cache;
+            this.priority = priority;
+        }
+
+    }
+
+    private final List<Registration> mRegistrations = new ArrayList<>();
+
+    private CacheRegistry() {
+    }
+
+    /**
+     * Method used to get an instance of CacheRegistry class
+     *
+     * @return an instance of CacheRegistry class
+     */
+    public static CacheRegistry getInstance() {
+        if (sInstance == null) {
+            synchronized (LOCK) {
+                if (sInstance == null) sInstance = new CacheRegistry();
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * Register a cache to be trimmed on memory pressure
+     *
+     * @param name     name of the cache, used in logs
+     * @param cache    the cache
+     * @param priority one of {@link #PRIORITY_LOW}, {@link #PRIORITY_NORMAL} or {@link #PRIORITY_HIGH}
+     */
+    public synchronized void register(String name, TrimmableCache cache, int priority) {
+        mRegistrations.add(new Registration(name, cache, priority));
+    }
+
+    /**
+     * @return estimated heap size of all the registered caches in bytes
+     */
+    public synchronized int getSize() {
+        int size = 0;
+        for (Registration registration : mRegistrations) {
+            size += registration.cache.getSize();
+        }
+        return size;
+    }
+
+    /**
+     * Trim the registered caches, tier by tier, depending on the memory trim level
+     *
+     * @param level memory trim level passed to {@link ComponentCallbacks2#onTrimMemory(int)}
+     */
+    public synchronized void onTrimMemory(int level) {
+        int pressure = getPressure(level);
+        if (pressure == 0) {
+            return;
+        }
+        int sizeBefore = getSize();
+        for (int priority = PRIORITY_LOW; priority <= PRIORITY_HIGH; priority++) {
+            // Every step of pressure halves the next tier then clears it
+            int tierPressure = pressure - 2 * priority;
+            if (tierPressure <= 0) {
+                break;
+            }
+            float fraction = tierPressure == 1 ? 0.5f : 0f;
+            for (Registration registration : mRegistrations) {
+                if (registration.priority == priority) {
+                    registration.cache.trimToFraction(fraction);
+                    Log.d(TAG, "Trimmed " + registration.name + " to " + fraction);
+                }
+            }
+        }
+        Log.d(TAG, "Trim level " + level + ": " + sizeBefore + " -> " + getSize() + " bytes");
+    }
+
+    /**
+     * @param level memory trim level
+     * @return number of half tiers to evict for the level
+     */
+    private static int getPressure(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE) {
+            // The process is the next one to be killed
+            return 6;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            return 4;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            return 3;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return 2;
+        } else if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            return 1;
+        }
+        return 0;
+    }
+
+}
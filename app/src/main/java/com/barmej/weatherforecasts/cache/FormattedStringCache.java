@@ -0,0 +1,71 @@
+package com.barmej.weatherforecasts.cache;
+
+import android.util.LruCache;
+
+import java.util.Locale;
+
+/**
+ * A small memory cache of formatted strings, e.g temperatures, keyed by the value they were
+ * formatted from. The strings depend on the locale, so the cache is cleared when it changes.
+ */
+public final class FormattedStringCache implements TrimmableCache {
+
+    /**
+     * Estimated heap size of a cached entry: the key, the string and the map node
+     */
+    private static final int ENTRY_SIZE = 96;
+
+    private final LruCache<Long, String> mStrings;
+
+    /**
+     * Locale the cached strings are formatted with
+     */
+    private Locale mLocale;
+
+    /**
+     * @param maxEntries maximum number of cached strings
+     */
+    public FormattedStringCache(int maxEntries) {
+        mStrings = new LruCache<>(maxEntries);
+    }
+
+    /**
+     * @param locale locale of the string
+     * @param key    value the string was formatted from
+     * @return the cached string, null if missing
+     */
+    public String get(Locale locale, long key) {
+        synchronized (this) {
+            if (!locale.equals(mLocale)) {
+                mStrings.evictAll();
+                mLocale = locale;
+                return null;
+            }
+            return mStrings.get(key);
+        }
+    }
+
+    /**
+     * @param locale locale the string was formatted with
+     * @param key    value the string was formatted from
+     * @param string the formatted string, dropped if the locale changed since it was formatted
+     */
+    public void put(Locale locale, long key, String string) {
+        synchronized (this) {
+            if (locale.equals(mLocale)) {
+                mStrings.put(key, string);
+            }
+        }
+    }
+
+    @Override
+    public int getSize() {
+        return mStrings.size() * ENTRY_SIZE;
+    }
+
+    @Override
+    public void trimToFraction(float fraction) {
+        mStrings.trimToSize((int) (mStrings.maxSize() * fraction));
+    }
+
+}
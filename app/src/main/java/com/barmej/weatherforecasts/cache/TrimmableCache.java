@@ -0,0 +1,22 @@
+package com.barmej.weatherforecasts.cache;
+
+/**
+ * A cache that can release memory when the system asks the app to, registered with
+ * {@link CacheRegistry}
+ */
+public interface TrimmableCache {
+
+    /**
+     * @return estimated heap size of the cached data in bytes
+     */
+    int getSize();
+
+    /**
+     * Evict the least recently used entries until the cache holds the given fraction of its
+     * maximum size
+     *
+     * @param fraction fraction of the maximum size to keep, 0 clears the cache
+     */
+    void trimToFraction(float fraction);
+
+}
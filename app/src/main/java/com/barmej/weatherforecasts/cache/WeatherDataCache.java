@@ -0,0 +1,301 @@
+package com.barmej.weatherforecasts.cache;
+
+import android.os.SystemClock;
+import android.util.LruCache;
+
+import com.barmej.weatherforecasts.entity.City;
+import com.barmej.weatherforecasts.entity.Forecast;
+import com.barmej.weatherforecasts.entity.ForecastLists;
+import com.barmej.weatherforecasts.entity.WeatherInfo;
+import com.barmej.weatherforecasts.network.RequestKey;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A memory cache of the parsed weather data of the recently viewed locations, so that going back
+ * to one of them shows its data right away instead of fetching and parsing it again.
+ * <p>
+ * The cache is bounded by the heap size of the cached objects, estimated from their number of
+ * forecast slots when they are put, and evicts the least recently used entries first. Entries are only returned
+ * as fresh while they are younger than {@link #MAX_AGE_MILLIS}, the update interval of
+ * OpenWeatherMap data. Older entries are kept until evicted, to be shown when the data can't be
+ * fetched.
+ * <p>
+ * The data is stored in canonical metric units with condition ids, so the measurement system
+ * and the language aren't part of the cache key, only the location is.
+ */
+public final class WeatherDataCache implements TrimmableCache {
+
+    /**
+     * Maximum size of the cached data in bytes
+     */
+    private static final int MAX_SIZE_BYTES = 512 * 1024;
+
+    /*
+     * Heap sizes in bytes of a current weather, a forecast slot and a list of slots, measured with
+     * Footprint on the recorded responses, ParsedModelFootprintTest checks them
+     */
+    public static final int WEATHER_INFO_SIZE_BYTES = 304;
+    public static final int FORECAST_SIZE_BYTES = 272;
+    public static final int FORECAST_LIST_SIZE_BYTES = 64;
+
+    /**
+     * Maximum age of a cached entry, OpenWeatherMap updates its data every 10 minutes
+     */
+    private static final long MAX_AGE_MILLIS = 10 * 60 * 1000;
+
+    /**
+     * Response fingerprint of the data that wasn't parsed from a whole response body
+     */
+    public static final long NO_FINGERPRINT = 0;
+
+    /**
+     * Object used for the purpose of synchronize lock
+     */
+    private static final Object LOCK = new Object();
+
+    /**
+     * Instance of this class for Singleton
+     */
+    private static WeatherDataCache sInstance;
+
+    /**
+     * Cached data with the time it was received
+     */
+    private static final class Entry {
+
+        final Object data;
+        final int size;
+        final long time;
+
+        /**
+         * Time the oldest part of the data was received, the full forecasts horizon of forecasts
+         * that had fresh hours merged in
+         */
+        final long horizonTime;
+
+        /**
+         * Fingerprint of the response body the data was parsed from
+         */
+        final long responseFingerprint;
+
+        Entry(Object data, int size, long responseFingerprint) {
+            this.data = data;
+            this.size = size;
+            this.time = SystemClock.elapsedRealtime();
+            this.horizonTime = time;
+            this.responseFingerprint = responseFingerprint;
+        }
+
+        Entry(Object data, int size, long horizonTime, long responseFingerprint) {
+            this.data = data;
+            this.size = size;
+            this.time = SystemClock.elapsedRealtime();
+            this.horizonTime = horizonTime;
+            this.responseFingerprint = responseFingerprint;
+        }
+
+    }
+
+    private final LruCache<RequestKey, Entry> mCache;
+
+    /*
+     * Lookups that returned data & lookups that found no usable data, missing or too old. The
+     * counts of LruCache can't be used, it counts the entries that are too old as hits.
+     */
+    private final AtomicInteger mHitCount = new AtomicInteger();
+    private final AtomicInteger mMissCount = new AtomicInteger();
+
+    private WeatherDataCache() {
+        mCache = new LruCache<RequestKey, Entry>(MAX_SIZE_BYTES) {
+            @Override
+            protected int sizeOf(RequestKey key, Entry entry) {
+                return entry.size;
+            }
+        };
+    }
+
+    /**
+     * Method used to get an instance of WeatherDataCache class
+     *
+     * @return an instance of WeatherDataCache class
+     */
+    public static WeatherDataCache getInstance() {
+        if (sInstance == null) {
+            synchronized (LOCK) {
+                if (sInstance == null) sInstance = new WeatherDataCache();
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param city the location
+     * @return the cached current weather of the location, null if missing or too old
+     */
+    public WeatherInfo getWeatherInfo(City city) {
+        return (WeatherInfo) get(RequestKey.of(RequestKey.ENDPOINT_WEATHER, city), MAX_AGE_MILLIS, false);
+    }
+
+    /**
+     * @param city the location
+     * @return the cached current weather of the location even if too old, null if missing
+     */
+    public WeatherInfo getLastWeatherInfo(City city) {
+        return (WeatherInfo) get(RequestKey.of(RequestKey.ENDPOINT_WEATHER, city), Long.MAX_VALUE, false);
+    }
+
+    /**
+     * @param city the location
+     * @return fingerprint of the response body the cached current weather of the location was
+     * parsed from, even if too old, {@link #NO_FINGERPRINT} if missing
+     */
+    public long getResponseFingerprint(City city) {
+        Entry entry = mCache.get(RequestKey.of(RequestKey.ENDPOINT_WEATHER, city));
+        return entry == null ? NO_FINGERPRINT : entry.responseFingerprint;
+    }
+
+    /**
+     * @param city                the location
+     * @param weatherInfo         the current weather of the location
+     * @param responseFingerprint fingerprint of the response body the weather was parsed from
+     */
+    public void putWeatherInfo(City city, WeatherInfo weatherInfo, long responseFingerprint) {
+        mCache.put(RequestKey.of(RequestKey.ENDPOINT_WEATHER, city), new Entry(weatherInfo, WEATHER_INFO_SIZE_BYTES, responseFingerprint));
+    }
+
+    /**
+     * Mark the cached current weather of the location as fresh again, when a new response body
+     * is the same as the body it was parsed from
+     *
+     * @param city                the location
+     * @param responseFingerprint fingerprint of the new response body
+     * @return the cached current weather, null if missing or parsed from another body
+     */
+    public WeatherInfo renewWeatherInfo(City city, long responseFingerprint) {
+        RequestKey key = RequestKey.of(RequestKey.ENDPOINT_WEATHER, city);
+        Entry entry = mCache.get(key);
+        if (entry == null || entry.responseFingerprint != responseFingerprint) {
+            return null;
+        }
+        mCache.put(key, new Entry(entry.data, entry.size, responseFingerprint));
+        return (WeatherInfo) entry.data;
+    }
+
+    /**
+     * @param city the location
+     * @return the cached forecasts of the location, null if missing or too old
+     */
+    public ForecastLists getForecastLists(City city) {
+        return (ForecastLists) get(RequestKey.of(RequestKey.ENDPOINT_FORECAST, city), MAX_AGE_MILLIS, false);
+    }
+
+    /**
+     * @param city         the location
+     * @param maxAgeMillis maximum age of the full forecasts horizon
+     * @return the cached forecasts of the location, null if missing or if the full horizon is
+     * older than maxAgeMillis, even when fresh hours were merged in since
+     */
+    public ForecastLists getForecastLists(City city, long maxAgeMillis) {
+        return (ForecastLists) get(RequestKey.of(RequestKey.ENDPOINT_FORECAST, city), maxAgeMillis, true);
+    }
+
+    /**
+     * @param city the location
+     * @return the cached forecasts of the location even if too old, null if missing
+     */
+    public ForecastLists getLastForecastLists(City city) {
+        return (ForecastLists) get(RequestKey.of(RequestKey.ENDPOINT_FORECAST, city), Long.MAX_VALUE, false);
+    }
+
+    /**
+     * @param city          the location
+     * @param forecastLists the forecasts of the location
+     */
+    public void putForecastLists(City city, ForecastLists forecastLists) {
+        mCache.put(RequestKey.of(RequestKey.ENDPOINT_FORECAST, city), new Entry(forecastLists, estimateSize(forecastLists), NO_FINGERPRINT));
+    }
+
+    /**
+     * Cache fresh hours merged into the cached full horizon, the entry keeps the time of the
+     * horizon so that it is still requested again once too old
+     *
+     * @param city                 the location
+     * @param forecastLists        the merged forecasts of the location
+     * @param horizonForecastLists the cached forecasts the hours were merged into
+     */
+    public void putMergedForecastLists(City city, ForecastLists forecastLists, ForecastLists horizonForecastLists) {
+        RequestKey key = RequestKey.of(RequestKey.ENDPOINT_FORECAST, city);
+        Entry entry = mCache.get(key);
+        if (entry == null || entry.data != horizonForecastLists) {
+            // The horizon was evicted or replaced meanwhile, the age of the merged data is unknown
+            return;
+        }
+        mCache.put(key, new Entry(forecastLists, estimateSize(forecastLists), entry.horizonTime, NO_FINGERPRINT));
+    }
+
+    /**
+     * @param forecastLists forecasts of a location
+     * @return estimated heap size in bytes of the forecasts
+     */
+    public static int estimateSize(ForecastLists forecastLists) {
+        List<Forecast> hoursForecasts = forecastLists.getHoursForecasts();
+        List<List<Forecast>> daysForecasts = forecastLists.getDaysForecasts();
+
+        int forecastsCount = 0;
+        for (List<Forecast> dayForecasts : daysForecasts) {
+            forecastsCount += dayForecasts.size();
+        }
+        // The days start with the first hour after today, the hours from there are shared with the days
+        int sharedIndex = hoursForecasts.size();
+        if (!daysForecasts.isEmpty() && !daysForecasts.get(0).isEmpty()) {
+            int index = hoursForecasts.indexOf(daysForecasts.get(0).get(0));
+            if (index >= 0) sharedIndex = index;
+        }
+        forecastsCount += sharedIndex;
+
+        return forecastsCount * FORECAST_SIZE_BYTES + (daysForecasts.size() + 2) * FORECAST_LIST_SIZE_BYTES;
+    }
+
+    /**
+     * @return number of lookups that returned cached data
+     */
+    public int getHitCount() {
+        return mHitCount.get();
+    }
+
+    /**
+     * @return number of lookups that found no usable data
+     */
+    public int getMissCount() {
+        return mMissCount.get();
+    }
+
+    @Override
+    public int getSize() {
+        return mCache.size();
+    }
+
+    @Override
+    public void trimToFraction(float fraction) {
+        mCache.trimToSize((int) (mCache.maxSize() * fraction));
+    }
+
+    /**
+     * @param key          key of the entry
+     * @param maxAgeMillis maximum age of the returned data
+     * @param horizon      whether the age is the age of the oldest part of the data
+     * @return the cached data, null if missing or too old
+     */
+    private Object get(RequestKey key, long maxAgeMillis, boolean horizon) {
+        Entry entry = mCache.get(key);
+        if (entry == null || SystemClock.elapsedRealtime() - (horizon ? entry.horizonTime : entry.time) > maxAgeMillis) {
+            mMissCount.incrementAndGet();
+            return null;
+        }
+        mHitCount.incrementAndGet();
+        return entry.data;
+    }
+
+}
@@ -0,0 +1,148 @@
+package com.barmej.weatherforecasts.concurrent;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The thread pools shared by all the background work of the app, so that work isn't run on ad-hoc
+ * threads and each kind of work is bounded on its own:
+ * <ul>
+ * <li>{@link #cpu()} for parsing, formatting & aggregation, sized to the CPU cores</li>
+ * <li>{@link #diskIO()} for files, databases & preferences</li>
+ * <li>{@link #networkIO()} for network calls made outside of Volley</li>
+ * <li>{@link #mainThread()} to hand results back to the UI</li>
+ * </ul>
+ * Pool threads run at background priority and stop when idle. Use {@link TaskScope} to cancel
+ * related tasks together.
+ */
+public final class AppExecutors {
+
+    /**
+     * Time an idle pool thread is kept before it stops
+     */
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Number of threads of the disk & network pools
+     */
+    private static final int DISK_IO_THREADS = 2;
+    private static final int NETWORK_IO_THREADS = 3;
+
+    /**
+     * Object used for the purpose of synchronize lock
+     */
+    private static final Object LOCK = new Object();
+
+    /**
+     * Instance of this class for Singleton
+     */
+    private static AppExecutors sInstance;
+
+    private final ExecutorService mCpu;
+    private final ExecutorService mDiskIO;
+    private final ExecutorService mNetworkIO;
+    private final Executor mMainThread;
+
+    private AppExecutors() {
+        // Leave a core to the main thread, but use at least 2 threads so one slow task can't stall the pool
+        int cpuThreads = Math.max(2, Math.min(Runtime.getRuntime().availableProcessors() - 1, 4));
+        mCpu = newPool("cpu", cpuThreads);
+        mDiskIO = newPool("disk", DISK_IO_THREADS);
+        mNetworkIO = newPool("network", NETWORK_IO_THREADS);
+        mMainThread = new MainThreadExecutor();
+    }
+
+    /**
+     * Method used to get an instance of AppExecutors class
+     *
+     * @return an instance of AppExecutors class
+     */
+    public static AppExecutors getInstance() {
+        if (sInstance == null) {
+            synchronized (LOCK) {
+                if (sInstance == null) sInstance = new AppExecutors();
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return pool for CPU bound work
+     */
+    public ExecutorService cpu() {
+        return mCpu;
+    }
+
+    /**
+     * @return pool for disk I/O
+     */
+    public ExecutorService diskIO() {
+        return mDiskIO;
+    }
+
+    /**
+     * @return pool for blocking network I/O
+     */
+    public ExecutorService networkIO() {
+        return mNetworkIO;
+    }
+
+    /**
+     * @return executor running tasks on the main thread
+     */
+    public Executor mainThread() {
+        return mMainThread;
+    }
+
+    /**
+     * @param name    prefix of the thread names
+     * @param threads maximum number of threads
+     * @return a pool running at most the given number of tasks at once, the others wait in a queue
+     */
+    private static ExecutorService newPool(final String name, int threads) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NonNull final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Don't compete with the main thread for the CPU
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, name + "-" + mCount.incrementAndGet());
+            }
+        });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Executor posting tasks to the main thread
+     */
+    private static class MainThreadExecutor implements Executor {
+
+        private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            mMainHandler.post(command);
+        }
+
+    }
+
+}
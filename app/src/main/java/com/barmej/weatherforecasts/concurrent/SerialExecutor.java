@@ -0,0 +1,58 @@
+package com.barmej.weatherforecasts.concurrent;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs tasks one at a time and in order on a shared pool, for work that isn't thread safe but
+ * doesn't deserve a thread of its own.
+ */
+public final class SerialExecutor implements Executor {
+
+    private final Executor mExecutor;
+
+    /**
+     * Tasks waiting for the running one, guarded by this
+     */
+    private final Deque<Runnable> mTasks = new ArrayDeque<>();
+
+    /**
+     * The task submitted to the pool, null when idle
+     */
+    private Runnable mActive;
+
+    /**
+     * @param executor pool the tasks are run on
+     */
+    public SerialExecutor(Executor executor) {
+        mExecutor = executor;
+    }
+
+    @Override
+    public synchronized void execute(@NonNull final Runnable command) {
+        mTasks.add(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    command.run();
+                } finally {
+                    scheduleNext();
+                }
+            }
+        });
+        if (mActive == null) {
+            scheduleNext();
+        }
+    }
+
+    private synchronized void scheduleNext() {
+        mActive = mTasks.poll();
+        if (mActive != null) {
+            mExecutor.execute(mActive);
+        }
+    }
+
+}
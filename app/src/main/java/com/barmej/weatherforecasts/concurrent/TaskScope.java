@@ -0,0 +1,208 @@
+package com.barmej.weatherforecasts.concurrent;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A group of tasks that are cancelled together, e.g all the stages of a refresh.
+ * <p>
+ * Tasks run on one of the {@link AppExecutors} pools and hand their result to a callback on the
+ * callback executor, the main thread by default. Once the scope is cancelled, queued tasks don't
+ * run, running tasks are interrupted, no more callbacks are delivered and the cancel actions,
+ * e.g cancelling network requests, are run. A scope can be cancelled by a lifecycle event with
+ * {@link #cancelOn(LifecycleOwner, Lifecycle.Event)}.
+ */
+public final class TaskScope {
+
+    /**
+     * Callback to receive the outcome of a task on the callback executor
+     *
+     * @param <T> type of the task result
+     */
+    public interface Callback<T> {
+
+        void onResult(T result);
+
+        void onError(Exception e);
+
+    }
+
+    private final Executor mCallbackExecutor;
+
+    /**
+     * Futures of the tasks that didn't complete yet, guarded by this
+     */
+    private final Set<Future<?>> mFutures = Collections.newSetFromMap(new IdentityHashMap<Future<?>, Boolean>());
+
+    /**
+     * Actions to run when the scope is cancelled, guarded by this
+     */
+    private final List<Runnable> mCancelActions = new ArrayList<>();
+
+    private volatile boolean mCancelled;
+
+    /**
+     * Create a scope delivering the callbacks on the main thread
+     */
+    public TaskScope() {
+        this(AppExecutors.getInstance().mainThread());
+    }
+
+    /**
+     * @param callbackExecutor executor the callbacks are delivered on
+     */
+    public TaskScope(Executor callbackExecutor) {
+        mCallbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * Run a task in this scope
+     *
+     * @param executor pool to run the task on
+     * @param task     the task
+     * @param callback callback to receive the result, or the exception thrown by the task
+     * @param <T>      type of the task result
+     */
+    public <T> void submit(ExecutorService executor, final Callable<T> task, final Callback<T> callback) {
+        if (mCancelled) {
+            return;
+        }
+        final Future<?>[] future = new Future<?>[1];
+        synchronized (this) {
+            future[0] = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    T result = null;
+                    Exception exception = null;
+                    try {
+                        if (!mCancelled) {
+                            result = task.call();
+                        }
+                    } catch (Exception e) {
+                        exception = e;
+                    } finally {
+                        remove(future);
+                    }
+                    deliver(result, exception, callback);
+                }
+            });
+            if (!future[0].isDone()) {
+                mFutures.add(future[0]);
+            }
+        }
+    }
+
+    /**
+     * Add an action to run when the scope is cancelled, it runs right away if the scope is
+     * already cancelled
+     *
+     * @param action the cancel action
+     */
+    public void onCancel(Runnable action) {
+        synchronized (this) {
+            if (!mCancelled) {
+                mCancelActions.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+
+    /**
+     * Cancel the scope when the lifecycle of the owner reaches the given event, must be called on
+     * the main thread
+     *
+     * @param owner activity or fragment owning the scope
+     * @param event event cancelling the scope, e.g {@link Lifecycle.Event#ON_STOP}
+     */
+    public void cancelOn(final LifecycleOwner owner, final Lifecycle.Event event) {
+        final LifecycleEventObserver observer = new LifecycleEventObserver() {
+            @Override
+            public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event currentEvent) {
+                if (currentEvent == event || currentEvent == Lifecycle.Event.ON_DESTROY) {
+                    source.getLifecycle().removeObserver(this);
+                    cancel();
+                }
+            }
+        };
+        owner.getLifecycle().addObserver(observer);
+        // Don't keep the owner alive through its lifecycle once the scope is done
+        onCancel(new Runnable() {
+            @Override
+            public void run() {
+                owner.getLifecycle().removeObserver(observer);
+            }
+        });
+    }
+
+    /**
+     * Cancel all the tasks of the scope and run the cancel actions, tasks submitted afterwards are
+     * ignored
+     */
+    public void cancel() {
+        List<Future<?>> futures;
+        List<Runnable> cancelActions;
+        synchronized (this) {
+            if (mCancelled) {
+                return;
+            }
+            mCancelled = true;
+            futures = new ArrayList<>(mFutures);
+            mFutures.clear();
+            cancelActions = new ArrayList<>(mCancelActions);
+            mCancelActions.clear();
+        }
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+        for (Runnable action : cancelActions) {
+            action.run();
+        }
+    }
+
+    /**
+     * @return true if the scope is cancelled, results of its tasks are dropped
+     */
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    private synchronized void remove(Future<?>[] future) {
+        if (future[0] != null) {
+            mFutures.remove(future[0]);
+        }
+    }
+
+    private <T> void deliver(final T result, final Exception exception, final Callback<T> callback) {
+        if (mCancelled) {
+            return;
+        }
+        mCallbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Checked again, the scope may have been cancelled while the callback was queued
+                if (mCancelled) {
+                    return;
+                }
+                if (exception != null) {
+                    callback.onError(exception);
+                } else {
+                    callback.onResult(result);
+                }
+            }
+        });
+    }
+
+}
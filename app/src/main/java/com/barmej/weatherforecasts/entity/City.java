@@ -0,0 +1,64 @@
+package com.barmej.weatherforecasts.entity;
+
+import java.util.Locale;
+
+public class City {
+
+    private long id;
+    private String name;
+    private String country;
+    private double lat;
+    private double lon;
+
+    /**
+     * The name as a typed location is matched, trimmed and in lower case, computed once when the
+     * name is set
+     */
+    private String normalizedName;
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+        this.normalizedName = name == null ? null : name.trim().toLowerCase(Locale.US);
+    }
+
+    public String getNormalizedName() {
+        return normalizedName;
+    }
+
+    public String getCountry() {
+        return country;
+    }
+
+    public void setCountry(String country) {
+        this.country = country;
+    }
+
+    public double getLat() {
+        return lat;
+    }
+
+    public void setLat(double lat) {
+        this.lat = lat;
+    }
+
+    public double getLon() {
+        return lon;
+    }
+
+    public void setLon(double lon) {
+        this.lon = lon;
+    }
+
+}
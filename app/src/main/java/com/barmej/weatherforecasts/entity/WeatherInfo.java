@@ -4,6 +4,7 @@ import java.util.List;
 
 public class WeatherInfo {
 
+    private long id;
     private List<Weather> weather = null;
     private Main main;
     private Wind wind;
@@ -11,6 +12,14 @@ public class WeatherInfo {
     private long dt;
     private String name;
 
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
     public List<Weather> getWeather() {
         return weather;
     }
@@ -72,7 +72,8 @@ public class PrimaryWeatherInfoFragment extends Fragment {
     }
 
     /**
-     * Update weather info object and reflect the updated data on UI
+     * Update weather info object and reflect the updated data on UI, the data is shown when the
+     * views are created if they aren't yet
      *
      * @param weatherInfo WeatherInfo object that contain the new data
      */
@@ -86,7 +87,7 @@ public class PrimaryWeatherInfoFragment extends Fragment {
      */
     private void showWeatherInfo() {
 
-        if (mWeatherInfo == null) {
+        if (mWeatherInfo == null || mIconImageView == null) {
             return;
         }
 
@@ -117,7 +118,7 @@ public class PrimaryWeatherInfoFragment extends Fragment {
         /* Weather Description ****************************************************************** */
 
         // Get weather condition description
-        String description = mWeatherInfo.getWeather().get(0).getDescription();
+        String description = WeatherUtils.getWeatherCondition(getContext(), mWeatherInfo.getWeather().get(0));
 
         // Display weather description
         mDescriptionTextView.setText(description);
@@ -132,7 +133,7 @@ public class PrimaryWeatherInfoFragment extends Fragment {
         /* Temperature ************************************************************************** */
 
         // Read temperature from weather object
-        String temperatureString = getString(R.string.format_temperature, mWeatherInfo.getMain().getTemp());
+        String temperatureString = WeatherUtils.getFormattedTemperature(getContext(), mWeatherInfo.getMain().getTemp());
 
         // Display temperature
         mTemperatureTextView.setText(temperatureString);
@@ -146,11 +147,11 @@ public class PrimaryWeatherInfoFragment extends Fragment {
 
         /* High (max) & Low (min) temperature temperature *************************************** */
 
-        // Read high temperature from weather object
-        double highTemperature = mWeatherInfo.getMain().getTempMax();
+        // Read high temperature from weather object in the preferred measurement system
+        double highTemperature = WeatherUtils.convertTemperature(getContext(), mWeatherInfo.getMain().getTempMax());
 
-        // Read low temperature from weather object
-        double lowTemperature = mWeatherInfo.getMain().getTempMin();
+        // Read low temperature from weather object in the preferred measurement system
+        double lowTemperature = WeatherUtils.convertTemperature(getContext(), mWeatherInfo.getMain().getTempMin());
 
         // Display high/low temperature
         mHighLowTempTextView.setText(getString(R.string.high_low_temperature, highTemperature, lowTemperature));
@@ -63,7 +63,8 @@ public class SecondaryWeatherInfoFragment extends Fragment {
     }
 
     /**
-     * Update weather info object and reflect the updated data on UI
+     * Update weather info object and reflect the updated data on UI, the data is shown when the
+     * views are created if they aren't yet
      *
      * @param weatherInfo WeatherInfo object that contain the new data
      */
@@ -77,7 +78,7 @@ public class SecondaryWeatherInfoFragment extends Fragment {
      */
     private void showWeatherInfo() {
 
-        if (mWeatherInfo == null) {
+        if (mWeatherInfo == null || humidityTextView == null) {
             return;
         }
 
@@ -1,16 +1,38 @@
 package com.barmej.weatherforecasts.fragments;
 
+import android.Manifest;
 import android.app.Activity;
+import android.content.Context;
 import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.location.LocationManager;
 import android.os.Bundle;
+import android.text.Editable;
 import android.text.TextUtils;
+import android.text.TextWatcher;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.EditText;
+import android.widget.ListPopupWindow;
+import android.widget.Toast;
 
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+import androidx.preference.EditTextPreference;
 import androidx.preference.ListPreference;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceFragmentCompat;
 import androidx.preference.PreferenceScreen;
 
 import com.barmej.weatherforecasts.R;
+import com.barmej.weatherforecasts.entity.City;
+import com.barmej.weatherforecasts.location.CityIndex;
+import com.barmej.weatherforecasts.utils.SharedPreferencesHelper;
+
+import java.util.List;
+import java.util.Locale;
 
 
 /**
@@ -20,6 +42,24 @@ import com.barmej.weatherforecasts.R;
  */
 public class SettingsFragment extends PreferenceFragmentCompat implements SharedPreferences.OnSharedPreferenceChangeListener {
 
+    /**
+     * Maximum number of city suggestions shown while typing the location
+     */
+    private static final int MAX_CITY_SUGGESTIONS = 8;
+
+    /**
+     * Minimum number of typed characters before showing city suggestions
+     */
+    private static final int MIN_QUERY_LENGTH = 2;
+
+    private static final int REQUEST_LOCATION_PERMISSION = 0;
+
+    /**
+     * The city picked from the suggestions or found near the device location, its id & coordinates
+     * are saved with the location so the weather can be requested by city id
+     */
+    private City mSelectedCity;
+
     @Override
     public void onCreatePreferences(Bundle bundle, String s) {
 
@@ -36,6 +76,43 @@ public class SettingsFragment extends PreferenceFragmentCompat implements Shared
             Preference preference = prefScreen.getPreference(i);
             setPreferenceSummary(preference);
         }
+
+        // Suggest cities from the offline city index while the user types the location
+        EditTextPreference locationPreference = findPreference(getString(R.string.pref_location_key));
+        if (locationPreference != null) {
+            locationPreference.setOnBindEditTextListener(new EditTextPreference.OnBindEditTextListener() {
+                @Override
+                public void onBindEditText(@NonNull EditText editText) {
+                    editText.addTextChangedListener(new CitySuggestionsWatcher(editText));
+                }
+            });
+        }
+
+        // Use the nearest city to the device location
+        Preference currentLocationPreference = findPreference(getString(R.string.pref_current_location_key));
+        if (currentLocationPreference != null) {
+            currentLocationPreference.setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
+                @Override
+                public boolean onPreferenceClick(Preference preference) {
+                    if (ContextCompat.checkSelfPermission(requireContext(), Manifest.permission.ACCESS_COARSE_LOCATION)
+                            == PackageManager.PERMISSION_GRANTED) {
+                        useCurrentLocation();
+                    } else {
+                        requestPermissions(new String[]{Manifest.permission.ACCESS_COARSE_LOCATION}, REQUEST_LOCATION_PERMISSION);
+                    }
+                    return true;
+                }
+            });
+        }
+    }
+
+    @Override
+    public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        if (requestCode == REQUEST_LOCATION_PERMISSION
+                && grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+            useCurrentLocation();
+        }
     }
 
     @Override
@@ -61,6 +138,13 @@ public class SettingsFragment extends PreferenceFragmentCompat implements Shared
             setPreferenceSummary(preference);
         }
 
+        // Keep the city id & coordinates only if the location is the selected city
+        if (getString(R.string.pref_location_key).equals(key)) {
+            String location = sharedPreferences.getString(key, "");
+            boolean isSelectedCity = mSelectedCity != null && getLocationQuery(mSelectedCity).equals(location);
+            SharedPreferencesHelper.setPreferredLocationCity(requireContext(), isSelectedCity ? mSelectedCity : null);
+        }
+
         // Set result to notify the MainActivity of the change
         if (getActivity() != null) {
             getActivity().setResult(Activity.RESULT_OK);
@@ -96,5 +180,159 @@ public class SettingsFragment extends PreferenceFragmentCompat implements Shared
 
     }
 
+    /**
+     * Set the location to the nearest city to the last known device location. If the city index
+     * isn't available the coordinates are used as location.
+     */
+    @SuppressWarnings("MissingPermission")
+    private void useCurrentLocation() {
+        final Context context = requireContext();
+        Location location = getLastKnownLocation(context);
+        if (location == null) {
+            Toast.makeText(context, R.string.current_location_unavailable, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        final double lat = location.getLatitude();
+        final double lon = location.getLongitude();
+        CityIndex.getInstance(context).findNearest(lat, lon, new CityIndex.NearestCityCallback() {
+            @Override
+            public void onNearestCity(City city) {
+                if (!isAdded()) {
+                    return;
+                }
+                if (city == null) {
+                    city = new City();
+                    city.setName(String.format(Locale.ENGLISH, "%.4f,%.4f", lat, lon));
+                    city.setLat(lat);
+                    city.setLon(lon);
+                }
+                mSelectedCity = city;
+                EditTextPreference locationPreference = findPreference(getString(R.string.pref_location_key));
+                if (locationPreference != null) {
+                    locationPreference.setText(getLocationQuery(city));
+                }
+            }
+        });
+    }
+
+    /**
+     * @param context Context to get the LocationManager
+     * @return the most recent location known by the device providers, null if there is none
+     */
+    @SuppressWarnings("MissingPermission")
+    private static Location getLastKnownLocation(Context context) {
+        LocationManager locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+        if (locationManager == null) {
+            return null;
+        }
+        Location lastKnownLocation = null;
+        for (String provider : locationManager.getProviders(true)) {
+            try {
+                Location location = locationManager.getLastKnownLocation(provider);
+                if (location != null && (lastKnownLocation == null || location.getTime() > lastKnownLocation.getTime())) {
+                    lastKnownLocation = location;
+                }
+            } catch (SecurityException e) {
+                e.printStackTrace();
+            }
+        }
+        return lastKnownLocation;
+    }
+
+    /**
+     * @param city City object
+     * @return location in the "{city name},{country code}" form supported by OpenWeatherMap
+     */
+    private static String getLocationQuery(City city) {
+        if (TextUtils.isEmpty(city.getCountry())) {
+            return city.getName();
+        }
+        return city.getName() + "," + city.getCountry();
+    }
+
+    /**
+     * Search the offline city index while the location is typed and show the matching cities
+     * in a popup under the location EditText
+     */
+    private class CitySuggestionsWatcher implements TextWatcher, CityIndex.SearchCallback,
+            AdapterView.OnItemClickListener {
+
+        private final EditText mEditText;
+        private final ListPopupWindow mPopup;
+        private final ArrayAdapter<String> mAdapter;
+        private final CityIndex mCityIndex;
+
+        /**
+         * Cities currently shown in the popup
+         */
+        private List<City> mCities;
+
+        /**
+         * True while the text is changed by selecting a suggestion
+         */
+        private boolean mSelecting;
+
+        CitySuggestionsWatcher(EditText editText) {
+            mEditText = editText;
+            mCityIndex = CityIndex.getInstance(editText.getContext());
+            // Build or map the index while the first letters are typed
+            mCityIndex.preload();
+            mAdapter = new ArrayAdapter<>(editText.getContext(), android.R.layout.simple_list_item_1);
+            mPopup = new ListPopupWindow(editText.getContext());
+            mPopup.setAnchorView(editText);
+            mPopup.setAdapter(mAdapter);
+            mPopup.setOnItemClickListener(this);
+        }
+
+        @Override
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        }
+
+        @Override
+        public void onTextChanged(CharSequence s, int start, int before, int count) {
+        }
+
+        @Override
+        public void afterTextChanged(Editable s) {
+            if (mSelecting) {
+                return;
+            }
+            String query = s.toString();
+            if (query.trim().length() < MIN_QUERY_LENGTH) {
+                mPopup.dismiss();
+                return;
+            }
+            mCityIndex.search(query, MAX_CITY_SUGGESTIONS, this);
+        }
+
+        @Override
+        public void onSearchResult(String query, List<City> cities) {
+            // Ignore results of a query the user already changed or of a closed dialog
+            if (!query.equals(mEditText.getText().toString()) || mEditText.getWindowToken() == null) {
+                return;
+            }
+            mCities = cities;
+            mAdapter.clear();
+            for (City city : cities) {
+                mAdapter.add(getLocationQuery(city));
+            }
+            if (cities.isEmpty()) {
+                mPopup.dismiss();
+            } else {
+                mPopup.show();
+            }
+        }
+
+        @Override
+        public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+            mSelectedCity = mCities.get(position);
+            mSelecting = true;
+            mEditText.setText(mAdapter.getItem(position));
+            mEditText.setSelection(mEditText.length());
+            mSelecting = false;
+            mPopup.dismiss();
+        }
+
+    }
 
 }
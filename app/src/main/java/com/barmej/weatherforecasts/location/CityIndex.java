@@ -0,0 +1,608 @@
+package com.barmej.weatherforecasts.location;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.WorkerThread;
+
+import com.barmej.weatherforecasts.BuildConfig;
+import com.barmej.weatherforecasts.concurrent.AppExecutors;
+import com.barmej.weatherforecasts.concurrent.SerialExecutor;
+import com.barmej.weatherforecasts.entity.City;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Offline index of the cities supported by OpenWeatherMap used to suggest locations while the
+ * user is typing and to find the nearest city to a coordinate.
+ * <p>
+ * The index is a file of sorted, front coded normalized city names that is memory mapped when
+ * the first search happens, a prefix search is a binary search over the blocks of keys followed by
+ * a sequential scan, so searching doesn't need to load the city list into the heap.
+ * The same file holds the cities ordered as an implicit k-d tree for the nearest city lookups.
+ * The file is built once from the bundled city list asset by {@link CityIndexBuilder}, which takes
+ * a few seconds, so the index is preloaded as soon as the location can be typed.
+ */
+public final class CityIndex {
+
+    private static final String TAG = CityIndex.class.getSimpleName();
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * OpenWeatherMap city list bundled in the assets
+     */
+    private static final String CITY_LIST_ASSET = "city.list.json.gz";
+
+    /*
+     * Index file format
+     */
+    static final int MAGIC = 0x43494458; // "CIDX"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 10 * 4;
+    static final int CITY_RECORD_SIZE = 4 + 4 + 4 + 4;
+    static final int COUNTRY_SIZE = 2;
+    static final int BLOCK_SIZE = 16;
+
+    /**
+     * Object used for the purpose of synchronize lock
+     */
+    private static final Object LOCK = new Object();
+
+    /**
+     * Instance of this class for Singleton
+     */
+    private static CityIndex sInstance;
+
+    /**
+     * Callback to receive search results on the main thread
+     */
+    public interface SearchCallback {
+        void onSearchResult(String query, List<City> cities);
+    }
+
+    /**
+     * Callback to receive the nearest city on the main thread
+     */
+    public interface NearestCityCallback {
+        void onNearestCity(City city);
+    }
+
+    /**
+     * Instance of the application context
+     */
+    private final Context mContext;
+
+    /**
+     * Runs the index loading & searches one at a time on the disk pool, the index isn't thread safe
+     */
+    private final Executor mExecutor = new SerialExecutor(AppExecutors.getInstance().diskIO());
+
+    /**
+     * Handler to deliver search results on the main thread
+     */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Sequence number of the last requested search, older searches that didn't start yet are skipped
+     */
+    private final AtomicInteger mSearchSequence = new AtomicInteger();
+
+    /**
+     * The index file, built from the city list asset if it doesn't exist
+     */
+    private final File mIndexFile;
+
+    /**
+     * The memory mapped index file, null until the first search
+     */
+    private ByteBuffer mBuffer;
+
+    /**
+     * True if the index can't be loaded, e.g the city list isn't bundled
+     */
+    private boolean mUnavailable;
+
+    /*
+     * Values read from the index header
+     */
+    private int mCityCount;
+    private int mKeyCount;
+    private int mBlockCount;
+    private int mCitiesOffset;
+    private int mNamesOffset;
+    private int mBlockIndexOffset;
+    private int mBlocksOffset;
+    private int mKdTreeOffset;
+
+    /**
+     * @param context Context to use for some initializations
+     */
+    private CityIndex(Context context) {
+        this(context, new File(context.getFilesDir(), "cities-" + BuildConfig.VERSION_CODE + "-" + VERSION + ".idx"));
+    }
+
+    /**
+     * @param context   Context to use for some initializations
+     * @param indexFile the index file, e.g an index built by the tests
+     */
+    CityIndex(Context context, File indexFile) {
+        mContext = context.getApplicationContext();
+        mIndexFile = indexFile;
+    }
+
+    /**
+     * Method used to get an instance of CityIndex class
+     *
+     * @param context Context to use for some initializations
+     * @return an instance of CityIndex class
+     */
+    public static CityIndex getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (LOCK) {
+                if (sInstance == null) sInstance = new CityIndex(context);
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * Load the index in the background, building it first if needed, so that the first search
+     * doesn't have to wait for it
+     */
+    public void preload() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                getBuffer();
+            }
+        });
+    }
+
+    /**
+     * Search asynchronously for the cities which names start with the given query
+     *
+     * @param query    text typed by the user
+     * @param limit    maximum number of cities to return
+     * @param callback callback to receive the result on the main thread
+     */
+    public void search(final String query, final int limit, final SearchCallback callback) {
+        final int sequence = mSearchSequence.incrementAndGet();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (sequence != mSearchSequence.get()) {
+                    // The user typed more text since this search was requested
+                    return;
+                }
+                final List<City> cities = search(query, limit);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onSearchResult(query, cities);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Search for the cities which names start with the given query, ignoring case, diacritics
+     * and the different forms of Arabic letters
+     *
+     * @param query text typed by the user
+     * @param limit maximum number of cities to return
+     * @return list of cities sorted by name
+     */
+    @WorkerThread
+    public List<City> search(String query, int limit) {
+
+        String normalizedQuery = CityNameNormalizer.normalize(query);
+        ByteBuffer buffer = getBuffer();
+        if (normalizedQuery.isEmpty() || buffer == null) {
+            return Collections.emptyList();
+        }
+
+        // Use a private view of the mapped file so that searches don't share a position
+        Cursor cursor = new Cursor(buffer.duplicate());
+        byte[] prefix = normalizedQuery.getBytes(UTF_8);
+        byte[] key = new byte[64];
+        Set<Integer> ordinals = new LinkedHashSet<>();
+
+        scan:
+        for (int block = findFirstBlock(cursor, prefix); block < mBlockCount; block++) {
+            cursor.position(mBlocksOffset + cursor.getInt(mBlockIndexOffset + block * 4));
+            int keysInBlock = Math.min(BLOCK_SIZE, mKeyCount - block * BLOCK_SIZE);
+            int keyLength = 0;
+            for (int i = 0; i < keysInBlock; i++) {
+                int shared = cursor.readVarInt();
+                int suffixLength = cursor.readVarInt();
+                keyLength = shared + suffixLength;
+                if (key.length < keyLength) {
+                    byte[] larger = new byte[Math.max(keyLength, key.length * 2)];
+                    System.arraycopy(key, 0, larger, 0, shared);
+                    key = larger;
+                }
+                cursor.read(key, shared, suffixLength);
+                int cityOrdinal = cursor.readVarInt();
+
+                if (startsWith(key, keyLength, prefix)) {
+                    ordinals.add(cityOrdinal);
+                    if (ordinals.size() >= limit) break scan;
+                } else if (compare(key, keyLength, prefix) > 0) {
+                    // Keys are sorted, no more matches after this key
+                    break scan;
+                }
+            }
+        }
+
+        List<City> cities = new ArrayList<>(ordinals.size());
+        for (int ordinal : ordinals) {
+            cities.add(readCity(cursor, ordinal));
+        }
+        return cities;
+    }
+
+    /**
+     * Find asynchronously the nearest city to the given coordinate
+     *
+     * @param lat      latitude
+     * @param lon      longitude
+     * @param callback callback to receive the city, or null if the index isn't available, on the main thread
+     */
+    public void findNearest(final double lat, final double lon, final NearestCityCallback callback) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final City city = findNearest(lat, lon);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onNearestCity(city);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Find the nearest city to the given coordinate using the k-d tree stored in the index
+     *
+     * @param lat latitude
+     * @param lon longitude
+     * @return the nearest city or null if the index isn't available
+     */
+    @WorkerThread
+    public City findNearest(double lat, double lon) {
+        ByteBuffer buffer = getBuffer();
+        if (buffer == null || mCityCount == 0) {
+            return null;
+        }
+        Cursor cursor = new Cursor(buffer.duplicate());
+        NearestCity nearest = new NearestCity(lat, lon);
+        searchKdTree(cursor, 0, mCityCount, 0, nearest);
+        return readCity(cursor, nearest.ordinal);
+    }
+
+    /**
+     * Search a range of the k-d tree for a city nearer than the best one found so far.
+     * The half on the same side of the splitting city as the coordinate is searched first and the
+     * other half is skipped when it can't contain a nearer city, neither directly nor across the
+     * antimeridian.
+     *
+     * @param cursor  cursor over the index file
+     * @param from    start of the range, inclusive
+     * @param to      end of the range, exclusive
+     * @param depth   level of the range in the tree, even levels split by latitude
+     * @param nearest the best city found so far
+     */
+    private void searchKdTree(Cursor cursor, int from, int to, int depth, NearestCity nearest) {
+        if (from >= to) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        int ordinal = cursor.getInt(mKdTreeOffset + middle * 4);
+        int recordOffset = mCitiesOffset + ordinal * CITY_RECORD_SIZE;
+        float cityLat = cursor.getFloat(recordOffset + 4);
+        float cityLon = cursor.getFloat(recordOffset + 8);
+        nearest.offer(ordinal, cityLat, cityLon);
+
+        double delta;
+        double bound;
+        if (depth % 2 == 0) {
+            delta = nearest.lat - cityLat;
+            bound = Math.abs(delta);
+        } else {
+            // The other half can also hold nearer cities across the antimeridian
+            delta = nearest.lon - cityLon;
+            bound = Math.min(Math.abs(delta), 180 - Math.abs(nearest.lon)) * nearest.lonScale;
+        }
+        if (delta < 0) {
+            searchKdTree(cursor, from, middle, depth + 1, nearest);
+            if (bound * bound < nearest.distance) {
+                searchKdTree(cursor, middle + 1, to, depth + 1, nearest);
+            }
+        } else {
+            searchKdTree(cursor, middle + 1, to, depth + 1, nearest);
+            if (bound * bound < nearest.distance) {
+                searchKdTree(cursor, from, middle, depth + 1, nearest);
+            }
+        }
+    }
+
+    /**
+     * Find the last block which first key is before the prefix, matching keys can't be in an
+     * earlier block
+     *
+     * @param cursor cursor over the index file
+     * @param prefix normalized query
+     * @return index of the block to start scanning from
+     */
+    private int findFirstBlock(Cursor cursor, byte[] prefix) {
+        int low = 0;
+        int high = mBlockCount - 1;
+        int result = 0;
+        byte[] key = new byte[64];
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            cursor.position(mBlocksOffset + cursor.getInt(mBlockIndexOffset + middle * 4));
+            // The first key of a block is stored in full
+            cursor.readVarInt();
+            int keyLength = cursor.readVarInt();
+            if (key.length < keyLength) key = new byte[keyLength];
+            cursor.read(key, 0, keyLength);
+            if (compare(key, keyLength, prefix) < 0) {
+                result = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Read a city record from the index
+     *
+     * @param cursor  cursor over the index file
+     * @param ordinal position of the city in the cities table
+     * @return City object
+     */
+    private City readCity(Cursor cursor, int ordinal) {
+        int recordOffset = mCitiesOffset + ordinal * CITY_RECORD_SIZE;
+        City city = new City();
+        city.setId(cursor.getInt(recordOffset));
+        city.setLat(cursor.getFloat(recordOffset + 4));
+        city.setLon(cursor.getFloat(recordOffset + 8));
+        cursor.position(mNamesOffset + cursor.getInt(recordOffset + 12));
+        int nameLength = cursor.readUnsignedShort();
+        byte[] name = new byte[nameLength];
+        cursor.read(name, 0, nameLength);
+        city.setName(new String(name, UTF_8));
+        byte[] country = new byte[COUNTRY_SIZE];
+        cursor.read(country, 0, COUNTRY_SIZE);
+        city.setCountry(new String(country, UTF_8).trim());
+        return city;
+    }
+
+    /**
+     * Get the memory mapped index file, building it first if needed
+     *
+     * @return the mapped index or null if it's not available
+     */
+    @WorkerThread
+    private synchronized ByteBuffer getBuffer() {
+        if (mBuffer != null || mUnavailable) {
+            return mBuffer;
+        }
+        File indexFile = mIndexFile;
+        try {
+            if (!indexFile.exists()) {
+                deleteOldIndexFiles(indexFile);
+                buildIndex(indexFile);
+            }
+            mBuffer = map(indexFile);
+        } catch (FileNotFoundException e) {
+            Log.w(TAG, "City list is not bundled, city search is disabled");
+            mUnavailable = true;
+        } catch (IOException e) {
+            Log.e(TAG, "Can't load the city index", e);
+            indexFile.delete();
+            mUnavailable = true;
+        }
+        return mBuffer;
+    }
+
+    /**
+     * Build the index file from the bundled city list
+     *
+     * @param indexFile file to write the index to
+     * @throws IOException if the city list can't be read or the index can't be written
+     */
+    private void buildIndex(File indexFile) throws IOException {
+        long start = System.currentTimeMillis();
+        InputStream cityList = new GZIPInputStream(mContext.getAssets().open(CITY_LIST_ASSET));
+        try {
+            CityIndexBuilder.build(cityList, indexFile);
+        } finally {
+            cityList.close();
+        }
+        Log.d(TAG, "City index built in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Delete index files built by previous versions of the app
+     *
+     * @param indexFile the index file of the current version
+     */
+    private void deleteOldIndexFiles(File indexFile) {
+        File[] files = mContext.getFilesDir().listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (file.getName().startsWith("cities-") && !file.equals(indexFile)) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Memory map the index file and read its header
+     *
+     * @param indexFile the index file
+     * @return the mapped file
+     * @throws IOException if the file can't be mapped or it's not a valid index
+     */
+    private ByteBuffer map(File indexFile) throws IOException {
+        FileInputStream inputStream = new FileInputStream(indexFile);
+        ByteBuffer buffer;
+        try {
+            FileChannel channel = inputStream.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            // The mapping stays valid after the channel is closed
+            inputStream.close();
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Invalid city index file");
+        }
+        mCityCount = buffer.getInt(8);
+        mKeyCount = buffer.getInt(12);
+        mBlockCount = buffer.getInt(16);
+        mCitiesOffset = buffer.getInt(20);
+        mNamesOffset = buffer.getInt(24);
+        mBlockIndexOffset = buffer.getInt(28);
+        mBlocksOffset = buffer.getInt(32);
+        mKdTreeOffset = buffer.getInt(36);
+        Log.d(TAG, "City index loaded: " + mCityCount + " cities, " + mKeyCount + " names");
+        return buffer;
+    }
+
+    /**
+     * Compare a key with a prefix as unsigned bytes
+     *
+     * @param key       key bytes
+     * @param keyLength length of the key in the array
+     * @param other     bytes to compare with
+     * @return negative, zero or positive if the key is before, equal or after the other bytes
+     */
+    static int compare(byte[] key, int keyLength, byte[] other) {
+        int length = Math.min(keyLength, other.length);
+        for (int i = 0; i < length; i++) {
+            int difference = (key[i] & 0xFF) - (other[i] & 0xFF);
+            if (difference != 0) return difference;
+        }
+        return keyLength - other.length;
+    }
+
+    /**
+     * @param key       key bytes
+     * @param keyLength length of the key in the array
+     * @param prefix    prefix bytes
+     * @return true if the key starts with the prefix
+     */
+    private static boolean startsWith(byte[] key, int keyLength, byte[] prefix) {
+        if (keyLength < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (key[i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Best candidate of a nearest city search. Distances are squared equirectangular distances in
+     * degrees, longitudes are scaled by the cosine of the searched latitude and wrap around the
+     * antimeridian.
+     */
+    private static final class NearestCity {
+
+        final double lat;
+        final double lon;
+        final double lonScale;
+        int ordinal;
+        double distance = Double.MAX_VALUE;
+
+        NearestCity(double lat, double lon) {
+            this.lat = lat;
+            this.lon = lon;
+            this.lonScale = Math.cos(Math.toRadians(lat));
+        }
+
+        void offer(int cityOrdinal, double cityLat, double cityLon) {
+            double deltaLat = lat - cityLat;
+            double deltaLon = Math.abs(lon - cityLon);
+            if (deltaLon > 180) {
+                deltaLon = 360 - deltaLon;
+            }
+            deltaLon *= lonScale;
+            double cityDistance = deltaLat * deltaLat + deltaLon * deltaLon;
+            if (cityDistance < distance) {
+                distance = cityDistance;
+                ordinal = cityOrdinal;
+            }
+        }
+
+    }
+
+    /**
+     * Sequential reader over the mapped index file
+     */
+    private static final class Cursor {
+
+        private final ByteBuffer mBuffer;
+
+        Cursor(ByteBuffer buffer) {
+            mBuffer = buffer;
+        }
+
+        void position(int position) {
+            mBuffer.position(position);
+        }
+
+        int getInt(int offset) {
+            return mBuffer.getInt(offset);
+        }
+
+        float getFloat(int offset) {
+            return mBuffer.getFloat(offset);
+        }
+
+        int readUnsignedShort() {
+            return mBuffer.getShort() & 0xFFFF;
+        }
+
+        void read(byte[] destination, int offset, int length) {
+            mBuffer.get(destination, offset, length);
+        }
+
+        int readVarInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = mBuffer.get();
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+    }
+
+}
@@ -0,0 +1,455 @@
+package com.barmej.weatherforecasts.location;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Builds the binary city index file read by {@link CityIndex} from the OpenWeatherMap city list
+ * (http://bulk.openweathermap.org/sample/city.list.json.gz).
+ * <p>
+ * The JSON list is read as a stream and only the fields needed by the index are kept while the
+ * keys get sorted: the city records in primitive arrays and the normalized names packed in a
+ * single byte array, the keys are sorted as int positions into it rather than as objects. The
+ * written file is then memory mapped by {@link CityIndex} and never loaded into the heap.
+ * <p>
+ * Besides the names, the file holds the cities ordered as an implicit k-d tree over their
+ * coordinates: the city in the middle of any range splits the rest of the range by latitude or
+ * longitude, alternating on each level.
+ */
+final class CityIndexBuilder {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /*
+     * City list json fields
+     */
+    private static final String OWM_CITY_ID = "id";
+    private static final String OWM_CITY_NAME = "name";
+    private static final String OWM_CITY_COUNTRY = "country";
+    private static final String OWM_CITY_COORD = "coord";
+    private static final String OWM_CITY_LAT = "lat";
+    private static final String OWM_CITY_LON = "lon";
+    private static final String OWM_CITY_LANGS = "langs";
+
+    /*
+     * Definite articles that users usually skip when searching, e.g "Kuwayt" for "Al Kuwayt"
+     */
+    private static final String LATIN_ARTICLE = "al ";
+    private static final String ARABIC_ARTICLE = "\u0627\u0644"; // ال
+
+    /**
+     * Initial capacity of the city records, grown as the list is read
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * The normalized names pointing to the city they belong to, packed in primitive arrays: a
+     * pool of the name bytes with the offset, length and city of each key
+     */
+    private static final class Keys {
+
+        byte[] pool = new byte[INITIAL_CAPACITY * 16];
+        int poolSize;
+        int[] offsets = new int[INITIAL_CAPACITY];
+        int[] lengths = new int[INITIAL_CAPACITY];
+        int[] cityOrdinals = new int[INITIAL_CAPACITY];
+        int count;
+
+        void add(byte[] bytes, int cityOrdinal) {
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                lengths = Arrays.copyOf(lengths, count * 2);
+                cityOrdinals = Arrays.copyOf(cityOrdinals, count * 2);
+            }
+            if (poolSize + bytes.length > pool.length) {
+                pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + bytes.length));
+            }
+            System.arraycopy(bytes, 0, pool, poolSize, bytes.length);
+            offsets[count] = poolSize;
+            lengths[count] = bytes.length;
+            cityOrdinals[count] = cityOrdinal;
+            poolSize += bytes.length;
+            count++;
+        }
+
+        /**
+         * @return the keys in sorted order, as their indexes
+         */
+        int[] sort() {
+            int[] order = new int[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            mergeSort(order, new int[count], 0, count);
+            return order;
+        }
+
+        private void mergeSort(int[] order, int[] buffer, int from, int to) {
+            if (to - from <= 1) {
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            mergeSort(order, buffer, from, middle);
+            mergeSort(order, buffer, middle, to);
+            if (compare(order[middle - 1], order[middle]) <= 0) {
+                // Already in order
+                return;
+            }
+            System.arraycopy(order, from, buffer, from, to - from);
+            int left = from;
+            int right = middle;
+            for (int i = from; i < to; i++) {
+                if (right >= to || (left < middle && compare(buffer[left], buffer[right]) <= 0)) {
+                    order[i] = buffer[left++];
+                } else {
+                    order[i] = buffer[right++];
+                }
+            }
+        }
+
+        /**
+         * Compare two keys as unsigned bytes, like {@link CityIndex#compare(byte[], int, byte[])}
+         */
+        int compare(int first, int second) {
+            int firstOffset = offsets[first];
+            int secondOffset = offsets[second];
+            int length = Math.min(lengths[first], lengths[second]);
+            for (int i = 0; i < length; i++) {
+                int difference = (pool[firstOffset + i] & 0xFF) - (pool[secondOffset + i] & 0xFF);
+                if (difference != 0) return difference;
+            }
+            return lengths[first] - lengths[second];
+        }
+
+    }
+
+    private CityIndexBuilder() {
+    }
+
+    /**
+     * Read the city list json and write the index file
+     *
+     * @param cityListJson stream of the OpenWeatherMap city list json array
+     * @param output       file to write the index to
+     * @throws IOException if the json can't be read or the file can't be written
+     */
+    static void build(InputStream cityListJson, File output) throws IOException {
+
+        int cityCount = 0;
+        int[] ids = new int[INITIAL_CAPACITY];
+        float[] latitudes = new float[INITIAL_CAPACITY];
+        float[] longitudes = new float[INITIAL_CAPACITY];
+        int[] nameOffsets = new int[INITIAL_CAPACITY];
+        ByteArrayOutputStream names = new ByteArrayOutputStream();
+        Keys keys = new Keys();
+
+        JsonReader reader = new JsonReader(new InputStreamReader(cityListJson, UTF_8));
+        try {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                int ordinal = cityCount;
+                String name = null;
+                String country = "";
+                float lat = 0;
+                float lon = 0;
+                int id = 0;
+                Set<String> alternateNames = new LinkedHashSet<>();
+
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case OWM_CITY_ID:
+                            id = reader.nextInt();
+                            break;
+                        case OWM_CITY_NAME:
+                            name = reader.nextString();
+                            break;
+                        case OWM_CITY_COUNTRY:
+                            country = reader.nextString();
+                            break;
+                        case OWM_CITY_COORD:
+                            reader.beginObject();
+                            while (reader.hasNext()) {
+                                String field = reader.nextName();
+                                if (OWM_CITY_LAT.equals(field)) {
+                                    lat = (float) reader.nextDouble();
+                                } else if (OWM_CITY_LON.equals(field)) {
+                                    lon = (float) reader.nextDouble();
+                                } else {
+                                    reader.skipValue();
+                                }
+                            }
+                            reader.endObject();
+                            break;
+                        case OWM_CITY_LANGS:
+                            readAlternateNames(reader, alternateNames);
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                }
+                reader.endObject();
+
+                if (name == null || name.isEmpty()) {
+                    continue;
+                }
+
+                if (cityCount == ids.length) {
+                    int capacity = cityCount * 2;
+                    ids = Arrays.copyOf(ids, capacity);
+                    latitudes = Arrays.copyOf(latitudes, capacity);
+                    longitudes = Arrays.copyOf(longitudes, capacity);
+                    nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+                }
+                ids[cityCount] = id;
+                latitudes[cityCount] = lat;
+                longitudes[cityCount] = lon;
+                nameOffsets[cityCount] = names.size();
+                cityCount++;
+                writeName(names, name, country);
+
+                // Index the name and its translations, each normalized form once
+                Set<String> normalizedNames = new LinkedHashSet<>();
+                normalizedNames.add(CityNameNormalizer.normalize(name));
+                for (String alternateName : alternateNames) {
+                    normalizedNames.add(CityNameNormalizer.normalize(alternateName));
+                }
+                for (String normalizedName : new ArrayList<>(normalizedNames)) {
+                    normalizedNames.add(removeArticle(normalizedName));
+                }
+                for (String normalizedName : normalizedNames) {
+                    if (!normalizedName.isEmpty()) {
+                        keys.add(normalizedName.getBytes(UTF_8), ordinal);
+                    }
+                }
+            }
+            reader.endArray();
+        } finally {
+            reader.close();
+        }
+
+        int[] sortedKeys = keys.sort();
+
+        // Front code the sorted keys in blocks, each block starts with a complete key
+        int blockCount = (keys.count + CityIndex.BLOCK_SIZE - 1) / CityIndex.BLOCK_SIZE;
+        int[] blockOffsets = new int[blockCount];
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        int previous = -1;
+        for (int i = 0; i < keys.count; i++) {
+            int key = sortedKeys[i];
+            int offset = keys.offsets[key];
+            int length = keys.lengths[key];
+            int shared = 0;
+            if (i % CityIndex.BLOCK_SIZE == 0) {
+                blockOffsets[i / CityIndex.BLOCK_SIZE] = blocks.size();
+            } else {
+                int previousOffset = keys.offsets[previous];
+                int max = Math.min(keys.lengths[previous], length);
+                while (shared < max && keys.pool[previousOffset + shared] == keys.pool[offset + shared]) shared++;
+            }
+            writeVarInt(blocks, shared);
+            writeVarInt(blocks, length - shared);
+            blocks.write(keys.pool, offset + shared, length - shared);
+            writeVarInt(blocks, keys.cityOrdinals[key]);
+            previous = key;
+        }
+
+        // Order the cities as a k-d tree for the nearest city lookups
+        int[] kdTree = new int[cityCount];
+        for (int i = 0; i < cityCount; i++) {
+            kdTree[i] = i;
+        }
+        buildKdTree(kdTree, 0, cityCount, 0, latitudes, longitudes);
+
+        int citiesOffset = CityIndex.HEADER_SIZE;
+        int namesOffset = citiesOffset + cityCount * CityIndex.CITY_RECORD_SIZE;
+        int blockIndexOffset = namesOffset + names.size();
+        int blocksOffset = blockIndexOffset + blockCount * 4;
+        int kdTreeOffset = blocksOffset + blocks.size();
+
+        // Write to a temporary file first so a half written index is never used
+        File temporary = new File(output.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+        try {
+            out.writeInt(CityIndex.MAGIC);
+            out.writeInt(CityIndex.VERSION);
+            out.writeInt(cityCount);
+            out.writeInt(keys.count);
+            out.writeInt(blockCount);
+            out.writeInt(citiesOffset);
+            out.writeInt(namesOffset);
+            out.writeInt(blockIndexOffset);
+            out.writeInt(blocksOffset);
+            out.writeInt(kdTreeOffset);
+            for (int i = 0; i < cityCount; i++) {
+                out.writeInt(ids[i]);
+                out.writeFloat(latitudes[i]);
+                out.writeFloat(longitudes[i]);
+                out.writeInt(nameOffsets[i]);
+            }
+            names.writeTo(out);
+            for (int blockOffset : blockOffsets) {
+                out.writeInt(blockOffset);
+            }
+            blocks.writeTo(out);
+            for (int cityOrdinal : kdTree) {
+                out.writeInt(cityOrdinal);
+            }
+        } finally {
+            out.close();
+        }
+        if (!temporary.renameTo(output)) {
+            throw new IOException("Can't rename " + temporary + " to " + output);
+        }
+    }
+
+    /**
+     * Recursively order a range of cities so that the middle city splits the range by latitude
+     * on even levels and by longitude on odd levels
+     *
+     * @param ordinals   city ordinals to order
+     * @param from       start of the range, inclusive
+     * @param to         end of the range, exclusive
+     * @param depth      level of the range in the tree
+     * @param latitudes  latitudes of the cities
+     * @param longitudes longitudes of the cities
+     */
+    private static void buildKdTree(int[] ordinals, int from, int to, int depth,
+                                    float[] latitudes, float[] longitudes) {
+        if (to - from <= 1) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        select(ordinals, from, to, middle, depth % 2 == 0 ? latitudes : longitudes);
+        buildKdTree(ordinals, from, middle, depth + 1, latitudes, longitudes);
+        buildKdTree(ordinals, middle + 1, to, depth + 1, latitudes, longitudes);
+    }
+
+    /**
+     * Partially order a range of cities so that the city at the given position is the one a sort
+     * would put there, with no city after it lower on the axis and no city before it higher
+     *
+     * @param ordinals city ordinals to order
+     * @param from     start of the range, inclusive
+     * @param to       end of the range, exclusive
+     * @param position position to select the city of
+     * @param axis     coordinates of the cities on the splitting axis
+     */
+    private static void select(int[] ordinals, int from, int to, int position, float[] axis) {
+        int low = from;
+        int high = to - 1;
+        while (low < high) {
+            float pivot = axis[ordinals[(low + high) >>> 1]];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (axis[ordinals[i]] < pivot) i++;
+                while (axis[ordinals[j]] > pivot) j--;
+                if (i <= j) {
+                    int ordinal = ordinals[i];
+                    ordinals[i] = ordinals[j];
+                    ordinals[j] = ordinal;
+                    i++;
+                    j--;
+                }
+            }
+            if (position <= j) {
+                high = j;
+            } else if (position >= i) {
+                low = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Read the translated names of a city, e.g [{"ar": "الكويت"}, {"fr": "Koweït"}]
+     *
+     * @param reader         json reader positioned at the translations array
+     * @param alternateNames set to add the translated names to
+     * @throws IOException if the json can't be read
+     */
+    private static void readAlternateNames(JsonReader reader, Set<String> alternateNames) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                reader.nextName();
+                if (reader.peek() == JsonToken.STRING) {
+                    alternateNames.add(reader.nextString());
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+    }
+
+    /**
+     * Remove the leading definite article from a normalized name
+     *
+     * @param normalizedName normalized city name
+     * @return the name without the leading article
+     */
+    private static String removeArticle(String normalizedName) {
+        if (normalizedName.startsWith(LATIN_ARTICLE)) {
+            return normalizedName.substring(LATIN_ARTICLE.length());
+        }
+        if (normalizedName.startsWith(ARABIC_ARTICLE) && normalizedName.length() > ARABIC_ARTICLE.length() + 1) {
+            return normalizedName.substring(ARABIC_ARTICLE.length());
+        }
+        return normalizedName;
+    }
+
+    /**
+     * Write the display name and the country code of a city to the names pool
+     *
+     * @param names   names pool
+     * @param name    city name
+     * @param country two letters country code
+     */
+    private static void writeName(ByteArrayOutputStream names, String name, String country) {
+        byte[] nameBytes = name.getBytes(UTF_8);
+        int length = Math.min(nameBytes.length, 0xFFFF);
+        names.write(length >>> 8);
+        names.write(length);
+        names.write(nameBytes, 0, length);
+        byte[] countryBytes = Arrays.copyOf(country.getBytes(UTF_8), CityIndex.COUNTRY_SIZE);
+        names.write(countryBytes, 0, CityIndex.COUNTRY_SIZE);
+    }
+
+    /**
+     * Write a non negative int using 7 bits per byte
+     *
+     * @param out   stream to write to
+     * @param value value to write
+     */
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.barmej.weatherforecasts.location;
+
+import java.text.Normalizer;
+
+/**
+ * Normalizes city names so that they can be matched regardless of case, diacritics (Latin accents
+ * and Arabic harakat) and the different written forms of some Arabic letters.
+ * Both the indexed names and the user search queries go through the same normalization.
+ */
+final class CityNameNormalizer {
+
+    /*
+     * Arabic letters that are commonly written interchangeably
+     */
+    private static final char ARABIC_TATWEEL = '\u0640'; // ـ
+    private static final char ARABIC_ALEF = '\u0627'; // ا
+    private static final char ARABIC_ALEF_WASLA = '\u0671'; // ٱ
+    private static final char ARABIC_TEH_MARBUTA = '\u0629'; // ة
+    private static final char ARABIC_HEH = '\u0647'; // ه
+    private static final char ARABIC_ALEF_MAKSURA = '\u0649'; // ى
+    private static final char ARABIC_YEH = '\u064A'; // ي
+
+    private CityNameNormalizer() {
+    }
+
+    /**
+     * Normalize the given name or query
+     *
+     * @param name city name or search query
+     * @return lower case name without diacritics, with unified Arabic letters and with every
+     * sequence of separators replaced by a single space
+     */
+    static String normalize(CharSequence name) {
+
+        // Decompose accented letters, e.g "é" becomes "e" followed by a combining accent
+        String decomposed = Normalizer.normalize(name, Normalizer.Form.NFD);
+
+        StringBuilder builder = new StringBuilder(decomposed.length());
+        boolean pendingSeparator = false;
+
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+
+            // Drop accents, Arabic harakat and the decomposed hamza/madda marks
+            if (Character.getType(c) == Character.NON_SPACING_MARK || c == ARABIC_TATWEEL) {
+                continue;
+            }
+
+            if (!Character.isLetterOrDigit(c)) {
+                // Spaces, dashes, apostrophes... are all treated as one separator
+                pendingSeparator = builder.length() > 0;
+                continue;
+            }
+
+            if (pendingSeparator) {
+                builder.append(' ');
+                pendingSeparator = false;
+            }
+            builder.append(fold(c));
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Fold a single letter to its canonical form
+     *
+     * @param c letter to fold
+     * @return canonical form of the letter
+     */
+    private static char fold(char c) {
+        switch (c) {
+            case ARABIC_ALEF_WASLA:
+                return ARABIC_ALEF;
+            case ARABIC_TEH_MARBUTA:
+                return ARABIC_HEH;
+            case ARABIC_ALEF_MAKSURA:
+                return ARABIC_YEH;
+            // Latin letters that have no canonical decomposition
+            case '\u00F8':
+            case '\u00D8':
+                return 'o';
+            case '\u0142':
+            case '\u0141':
+                return 'l';
+            case '\u0111':
+            case '\u0110':
+                return 'd';
+            case '\u0131':
+                return 'i';
+            default:
+                return Character.toLowerCase(c);
+        }
+    }
+
+}
@@ -0,0 +1,295 @@
+package com.barmej.weatherforecasts.metrics;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estimates the heap retained by a graph of objects, e.g the parsed model of a location, with the
+ * object layout of ART on a 64-bit device: 8 bytes object headers, 4 bytes references, 12 bytes
+ * array headers and objects aligned on 8 bytes. Objects reachable from several roots or several
+ * times are counted once.
+ * <p>
+ * Objects of the app are measured field by field. Strings, boxed values, arrays, collections and
+ * maps are measured from their content, without reading their private fields: the backing array
+ * of a list is counted at its size rather than its capacity, so the size of a list is a lower
+ * bound. Classes and enums are shared by the whole app and aren't counted.
+ * <p>
+ * An instance isn't thread safe, the layouts of the measured classes are shared.
+ */
+public final class Footprint {
+
+    /*
+     * ART object layout
+     */
+    private static final int OBJECT_HEADER = 8;
+    private static final int ARRAY_HEADER = 12;
+    private static final int REFERENCE = 4;
+    private static final int ALIGNMENT = 8;
+
+    /*
+     * Shallow sizes of java.util objects, with their fields
+     */
+    private static final int LIST_SIZE = align(OBJECT_HEADER + 2 * 4 + REFERENCE);
+    private static final int MAP_SIZE = align(OBJECT_HEADER + 4 * 4 + 4 * REFERENCE);
+    private static final int MAP_ENTRY_SIZE = align(OBJECT_HEADER + 4 + 5 * REFERENCE);
+    private static final int SET_SIZE = align(OBJECT_HEADER + REFERENCE);
+
+    /**
+     * Layouts of the measured classes
+     */
+    private static final Map<Class<?>, ClassLayout> sLayouts = new ConcurrentHashMap<>();
+
+    private final Set<Object> mVisited = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+    /**
+     * Objects waiting to be measured
+     */
+    private final Deque<Object> mPending = new ArrayDeque<>();
+
+    /**
+     * Size & count of the measured objects of each class, by class name
+     */
+    private final Map<String, long[]> mClassStats = new TreeMap<>();
+
+    private long mSize;
+
+    /**
+     * @param roots roots of the graph
+     * @return estimated size in bytes of the objects reachable from the roots
+     */
+    public static long sizeOf(Object... roots) {
+        Footprint footprint = new Footprint();
+        for (Object root : roots) {
+            footprint.add(root);
+        }
+        return footprint.getSize();
+    }
+
+    /**
+     * Add the objects reachable from the root that aren't already counted
+     *
+     * @param root root of a graph, ignored if null
+     * @return this footprint
+     */
+    public Footprint add(Object root) {
+        push(root);
+        while (!mPending.isEmpty()) {
+            measure(mPending.pop());
+        }
+        return this;
+    }
+
+    /**
+     * @return estimated size in bytes of the added objects
+     */
+    public long getSize() {
+        return mSize;
+    }
+
+    /**
+     * @return number of the added objects
+     */
+    public int getObjectCount() {
+        return mVisited.size();
+    }
+
+    /**
+     * @return the size & count of the added objects of each class, biggest first, one class by line
+     */
+    @Override
+    public String toString() {
+        List<Map.Entry<String, long[]>> entries = new ArrayList<>(mClassStats.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, long[]>>() {
+            @Override
+            public int compare(Map.Entry<String, long[]> a, Map.Entry<String, long[]> b) {
+                return Long.compare(b.getValue()[0], a.getValue()[0]);
+            }
+        });
+        StringBuilder builder = new StringBuilder(String.format(Locale.US, "%d bytes in %d objects", mSize, getObjectCount()));
+        for (Map.Entry<String, long[]> entry : entries) {
+            builder.append(String.format(Locale.US, "%n%10d %6d %s", entry.getValue()[0], entry.getValue()[1], entry.getKey()));
+        }
+        return builder.toString();
+    }
+
+    private void push(Object object) {
+        if (object != null && !(object instanceof Class) && !(object instanceof Enum) && mVisited.add(object)) {
+            mPending.push(object);
+        }
+    }
+
+    private void measure(Object object) {
+        Class<?> type = object.getClass();
+        long size;
+        if (object instanceof String) {
+            size = sizeOf((String) object);
+        } else if (object instanceof Number || object instanceof Boolean || object instanceof Character) {
+            // Boxed values hold a single field of at most 8 bytes
+            size = align(OBJECT_HEADER + 8);
+        } else if (type.isArray()) {
+            size = measureArray(object);
+        } else if (object instanceof Collection && isPlatformClass(type)) {
+            Collection<?> collection = (Collection<?>) object;
+            if (object instanceof Set) {
+                // A HashSet is backed by a HashMap of its elements
+                size = SET_SIZE + MAP_SIZE + sizeOfTable(collection.size()) + (long) collection.size() * MAP_ENTRY_SIZE;
+            } else {
+                size = LIST_SIZE + align(ARRAY_HEADER + (long) collection.size() * REFERENCE);
+            }
+            for (Object element : collection) {
+                push(element);
+            }
+        } else if (object instanceof Map && isPlatformClass(type)) {
+            Map<?, ?> map = (Map<?, ?>) object;
+            size = MAP_SIZE + sizeOfTable(map.size()) + (long) map.size() * MAP_ENTRY_SIZE;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                push(entry.getKey());
+                push(entry.getValue());
+            }
+        } else {
+            ClassLayout layout = getLayout(type);
+            size = layout.size;
+            for (Field field : layout.references) {
+                try {
+                    push(field.get(object));
+                } catch (IllegalAccessException e) {
+                    // Not reachable, the fields of the layout are accessible
+                }
+            }
+        }
+        mSize += size;
+        long[] stats = mClassStats.get(type.getName());
+        if (stats == null) {
+            stats = new long[2];
+            mClassStats.put(type.getName(), stats);
+        }
+        stats[0] += size;
+        stats[1]++;
+    }
+
+    private long measureArray(Object array) {
+        Class<?> componentType = array.getClass().getComponentType();
+        int length = java.lang.reflect.Array.getLength(array);
+        if (componentType.isPrimitive()) {
+            return align(ARRAY_HEADER + (long) length * sizeOfPrimitive(componentType));
+        }
+        for (Object element : (Object[]) array) {
+            push(element);
+        }
+        return align(ARRAY_HEADER + (long) length * REFERENCE);
+    }
+
+    /**
+     * ART stores the characters inline, one byte each for ASCII strings, two bytes otherwise
+     *
+     * @param string a string
+     * @return size of the string
+     */
+    private static long sizeOf(String string) {
+        int charSize = 1;
+        for (int i = 0; i < string.length(); i++) {
+            if (string.charAt(i) >= 0x80) {
+                charSize = 2;
+                break;
+            }
+        }
+        // Header, length & hash
+        return align(OBJECT_HEADER + 4 + 4 + (long) string.length() * charSize);
+    }
+
+    /**
+     * @param size number of entries of a hash map
+     * @return size of the table of a hash map with the default load factor
+     */
+    private static long sizeOfTable(int size) {
+        int capacity = 16;
+        while (capacity * 3 / 4 < size) {
+            capacity *= 2;
+        }
+        return align(ARRAY_HEADER + (long) capacity * REFERENCE);
+    }
+
+    private static int sizeOfPrimitive(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        } else if (type == int.class || type == float.class) {
+            return 4;
+        } else if (type == short.class || type == char.class) {
+            return 2;
+        }
+        return 1;
+    }
+
+    /**
+     * @param type class of an object
+     * @return true if the class is part of the platform, its private fields may not be readable
+     */
+    private static boolean isPlatformClass(Class<?> type) {
+        String name = type.getName();
+        return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("android.");
+    }
+
+    private static ClassLayout getLayout(Class<?> type) {
+        ClassLayout layout = sLayouts.get(type);
+        if (layout == null) {
+            layout = new ClassLayout(type);
+            sLayouts.put(type, layout);
+        }
+        return layout;
+    }
+
+    private static long align(long size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    private static int align(int size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    /**
+     * Shallow size of the instances of a class, and its reference fields to follow
+     */
+    private static final class ClassLayout {
+
+        final long size;
+        final List<Field> references = new ArrayList<>();
+
+        ClassLayout(Class<?> type) {
+            long fieldsSize = 0;
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    if (field.getType().isPrimitive()) {
+                        fieldsSize += sizeOfPrimitive(field.getType());
+                        continue;
+                    }
+                    fieldsSize += REFERENCE;
+                    try {
+                        field.setAccessible(true);
+                        references.add(field);
+                    } catch (RuntimeException e) {
+                        // A platform class that doesn't open its fields, its objects are counted without their children
+                    }
+                }
+            }
+            size = align(OBJECT_HEADER + fieldsSize);
+        }
+
+    }
+
+}
@@ -0,0 +1,319 @@
+package com.barmej.weatherforecasts.metrics;
+
+import android.app.Activity;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+import android.view.FrameMetrics;
+import android.view.ViewTreeObserver;
+import android.view.Window;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records the duration of the frames of the main screen while its lists scroll or the screen is
+ * refreshed, and attributes each frame to the stage that was active during it, so that the jank
+ * of two builds can be compared without relying on user reports.
+ * <p>
+ * On API 24+ the durations come from the {@link FrameMetrics} of the window. On older versions
+ * they are the intervals between two {@link Choreographer} frames, which only run while a stage
+ * is active. A frame is slow above 16ms and frozen above 700ms, like the Android vitals.
+ * <p>
+ * Stages are marked on the main thread with {@link #markStage(int)}. A frame is attributed to
+ * the most specific stage marked since the previous frame was recorded: refresh commit, then
+ * bind, then layout, and to scroll when the lists scroll without any of them. The stats are
+ * dumped with MainActivity's dump and shown by the debug LatencyActivity.
+ */
+public final class FrameMonitor {
+
+    /*
+     * Stages a frame is attributed to, from the least to the most specific
+     */
+    public static final int STAGE_SCROLL = 0;
+    public static final int STAGE_LAYOUT = 1;
+    public static final int STAGE_BIND = 2;
+    public static final int STAGE_COMMIT = 3;
+
+    private static final String[] STAGE_NAMES = {"scroll", "layout", "bind", "commit"};
+
+    /*
+     * Thresholds of slow & frozen frames
+     */
+    private static final long SLOW_FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(16);
+    private static final long FROZEN_FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(700);
+
+    /**
+     * Percentiles shown in the dump
+     */
+    private static final double[] PERCENTILES = {50, 90, 99};
+
+    /**
+     * Object used for the purpose of synchronize lock
+     */
+    private static final Object LOCK = new Object();
+
+    /**
+     * Instance of this class for Singleton
+     */
+    private static FrameMonitor sInstance;
+
+    /*
+     * Stats of each stage, they can be read from any thread
+     */
+    private final LatencyHistogram[] mFrameDurations = new LatencyHistogram[STAGE_NAMES.length];
+    private final AtomicLongArray mSlowFrames = new AtomicLongArray(STAGE_NAMES.length);
+    private final AtomicLongArray mFrozenFrames = new AtomicLongArray(STAGE_NAMES.length);
+
+    /*
+     * State of the attached window, only used on the main thread
+     */
+    private Window mWindow;
+    private ViewTreeObserver.OnGlobalLayoutListener mLayoutListener;
+    private FrameMetricsListener mFrameMetricsListener;
+    private int mStageMask;
+    private int mScrollingLists;
+
+    /*
+     * Choreographer fallback of the versions without FrameMetrics, only used on the main thread
+     */
+    private boolean mFrameCallbackPosted;
+    private long mLastFrameTimeNanos;
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mFrameCallbackPosted = false;
+            if (mLastFrameTimeNanos != 0) {
+                onFrame(frameTimeNanos - mLastFrameTimeNanos);
+            }
+            if (mWindow != null && isActive()) {
+                mLastFrameTimeNanos = frameTimeNanos;
+                postFrameCallback();
+            } else {
+                mLastFrameTimeNanos = 0;
+            }
+        }
+    };
+
+    private FrameMonitor() {
+        for (int stage = 0; stage < mFrameDurations.length; stage++) {
+            mFrameDurations[stage] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Method used to get an instance of FrameMonitor class
+     *
+     * @return an instance of FrameMonitor class
+     */
+    public static FrameMonitor getInstance() {
+        if (sInstance == null) {
+            synchronized (LOCK) {
+                if (sInstance == null) sInstance = new FrameMonitor();
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * Start monitoring the frames of the activity window, it replaces the window monitored before
+     *
+     * @param activity the activity to monitor
+     */
+    public void attach(Activity activity) {
+        detach();
+        mWindow = activity.getWindow();
+        mLayoutListener = new ViewTreeObserver.OnGlobalLayoutListener() {
+            @Override
+            public void onGlobalLayout() {
+                markStage(STAGE_LAYOUT);
+            }
+        };
+        mWindow.getDecorView().getViewTreeObserver().addOnGlobalLayoutListener(mLayoutListener);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            mFrameMetricsListener = new FrameMetricsListener(this);
+            mFrameMetricsListener.register(mWindow);
+        }
+    }
+
+    /**
+     * Stop monitoring the frames of the activity window
+     *
+     * @param activity the monitored activity
+     */
+    public void detach(Activity activity) {
+        if (mWindow == activity.getWindow()) {
+            detach();
+        }
+    }
+
+    /**
+     * Record the frames while the list scrolls
+     *
+     * @param list a list of the monitored window
+     */
+    public void track(RecyclerView list) {
+        list.addOnScrollListener(new RecyclerView.OnScrollListener() {
+
+            private boolean mScrolling;
+
+            @Override
+            public void onScrollStateChanged(@NonNull RecyclerView recyclerView, int newState) {
+                boolean scrolling = newState != RecyclerView.SCROLL_STATE_IDLE;
+                if (scrolling != mScrolling) {
+                    mScrolling = scrolling;
+                    mScrollingLists += scrolling ? 1 : -1;
+                    if (scrolling) {
+                        startFallbackFrames();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Mark a stage as active in the current frame, must be called on the main thread
+     *
+     * @param stage one of the stages, e.g {@link #STAGE_BIND}
+     */
+    public void markStage(int stage) {
+        if (mWindow == null) {
+            return;
+        }
+        mStageMask |= 1 << stage;
+        startFallbackFrames();
+    }
+
+    /**
+     * Forget the recorded frames
+     */
+    public void reset() {
+        for (int stage = 0; stage < mFrameDurations.length; stage++) {
+            mFrameDurations[stage].reset();
+            mSlowFrames.set(stage, 0);
+            mFrozenFrames.set(stage, 0);
+        }
+    }
+
+    /**
+     * Print a table of the frames recorded for each stage, durations in milliseconds
+     *
+     * @param prefix prefix of each line
+     * @param writer writer to print to
+     */
+    public void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.println(String.format(Locale.US, "%-8s %7s %6s %6s %9s %9s %9s %9s",
+                "stage", "frames", "slow", "frozen", "p50", "p90", "p99", "max"));
+        for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+            LatencyHistogram histogram = mFrameDurations[stage];
+            long count = histogram.getCount();
+            if (count == 0) {
+                continue;
+            }
+            writer.print(prefix);
+            writer.print(String.format(Locale.US, "%-8s %7d %6d %6d", STAGE_NAMES[stage], count,
+                    mSlowFrames.get(stage), mFrozenFrames.get(stage)));
+            for (double percentile : PERCENTILES) {
+                writer.print(String.format(Locale.US, " %9.2f", histogram.getPercentileMicros(percentile) / 1000.0));
+            }
+            writer.println(String.format(Locale.US, " %9.2f", histogram.getMaxMicros() / 1000.0));
+        }
+    }
+
+    private void detach() {
+        if (mWindow == null) {
+            return;
+        }
+        mWindow.getDecorView().getViewTreeObserver().removeOnGlobalLayoutListener(mLayoutListener);
+        if (mFrameMetricsListener != null) {
+            mFrameMetricsListener.unregister(mWindow);
+            mFrameMetricsListener = null;
+        }
+        if (mFrameCallbackPosted) {
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+            mFrameCallbackPosted = false;
+        }
+        mWindow = null;
+        mLayoutListener = null;
+        mStageMask = 0;
+        mScrollingLists = 0;
+        mLastFrameTimeNanos = 0;
+    }
+
+    /**
+     * @return true if the frames are recorded: the lists scroll or a stage is marked
+     */
+    private boolean isActive() {
+        return mScrollingLists > 0 || mStageMask != 0;
+    }
+
+    /**
+     * Record a frame if a stage is active, and attribute it to the most specific one
+     *
+     * @param durationNanos duration of the frame
+     */
+    void onFrame(long durationNanos) {
+        if (!isActive()) {
+            return;
+        }
+        int stage = mStageMask == 0 ? STAGE_SCROLL : 31 - Integer.numberOfLeadingZeros(mStageMask);
+        mStageMask = 0;
+        mFrameDurations[stage].record(durationNanos);
+        if (durationNanos > FROZEN_FRAME_NANOS) {
+            mFrozenFrames.incrementAndGet(stage);
+        } else if (durationNanos > SLOW_FRAME_NANOS) {
+            mSlowFrames.incrementAndGet(stage);
+        }
+    }
+
+    /**
+     * Follow the frames with Choreographer on the versions without FrameMetrics
+     */
+    private void startFallbackFrames() {
+        if (mFrameMetricsListener == null && !mFrameCallbackPosted) {
+            postFrameCallback();
+        }
+    }
+
+    private void postFrameCallback() {
+        mFrameCallbackPosted = true;
+        Choreographer.getInstance().postFrameCallback(mFrameCallback);
+    }
+
+    /**
+     * Receives the FrameMetrics of the window on the main thread, so that the frames and the stage
+     * marks are handled on the same thread
+     */
+    @RequiresApi(Build.VERSION_CODES.N)
+    private static class FrameMetricsListener implements Window.OnFrameMetricsAvailableListener {
+
+        private final FrameMonitor mFrameMonitor;
+
+        FrameMetricsListener(FrameMonitor frameMonitor) {
+            mFrameMonitor = frameMonitor;
+        }
+
+        void register(Window window) {
+            window.addOnFrameMetricsAvailableListener(this, new Handler(Looper.getMainLooper()));
+        }
+
+        void unregister(Window window) {
+            window.removeOnFrameMetricsAvailableListener(this);
+        }
+
+        @Override
+        public void onFrameMetricsAvailable(Window window, FrameMetrics frameMetrics, int dropCountSinceLastInvocation) {
+            mFrameMonitor.onFrame(frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION));
+        }
+
+    }
+
+}
@@ -0,0 +1,155 @@
+package com.barmej.weatherforecasts.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A latency histogram of fixed memory that can be recorded into from any thread without locks.
+ * <p>
+ * Latencies are counted in microsecond buckets: one bucket per microsecond below 8µs, then 8
+ * buckets per power of two, so a percentile is reported within 12.5% of the recorded value.
+ * Latencies above the last bucket, about 134s, are counted in the last bucket. The maximum is
+ * kept exactly.
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Buckets per power of two, as a number of bits
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Highest power of two of the buckets, 2^27µs is about 134s
+     */
+    private static final int MAX_EXPONENT = 27;
+
+    static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final AtomicLong mCount = new AtomicLong();
+
+    private final AtomicLong mMaxMicros = new AtomicLong();
+
+    /**
+     * Record a latency
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        mBuckets.incrementAndGet(bucketOf(micros));
+        mCount.incrementAndGet();
+        updateMax(micros);
+    }
+
+    /**
+     * Add the latencies recorded by another histogram, e.g to merge the histograms that threads
+     * record into on their own without sharing cache lines
+     *
+     * @param other the histogram to add, latencies recorded into it while this runs may be missed
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = other.mBuckets.get(i);
+            if (count != 0) {
+                mBuckets.addAndGet(i, count);
+            }
+        }
+        mCount.addAndGet(other.getCount());
+        updateMax(other.getMaxMicros());
+    }
+
+    /**
+     * @return number of recorded latencies
+     */
+    public long getCount() {
+        return mCount.get();
+    }
+
+    /**
+     * @return the highest recorded latency in microseconds
+     */
+    public long getMaxMicros() {
+        return mMaxMicros.get();
+    }
+
+    /**
+     * Latencies recorded while this runs may or may not be accounted for
+     *
+     * @param percentile percentile between 0 and 100, e.g 99
+     * @return the latency in microseconds that the given percentage of the recorded latencies
+     * don't exceed, 0 if nothing is recorded
+     */
+    public long getPercentileMicros(double percentile) {
+        long[] buckets = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = mBuckets.get(i);
+            count += buckets[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets[i];
+            if (seen >= rank && i < BUCKET_COUNT - 1) {
+                // Report the top of the bucket, but never more than the actual maximum
+                return Math.min(lowestOf(i + 1) - 1, getMaxMicros());
+            }
+        }
+        return getMaxMicros();
+    }
+
+    /**
+     * Forget the recorded latencies, latencies recorded while this runs may be kept
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mBuckets.set(i, 0);
+        }
+        mCount.set(0);
+        mMaxMicros.set(0);
+    }
+
+    private void updateMax(long micros) {
+        long max = mMaxMicros.get();
+        while (micros > max && !mMaxMicros.compareAndSet(max, micros)) {
+            max = mMaxMicros.get();
+        }
+    }
+
+    /**
+     * @param micros a latency in microseconds
+     * @return index of the bucket of the latency
+     */
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @param bucket index of a bucket, up to {@link #BUCKET_COUNT}
+     * @return the lowest latency in microseconds counted in the bucket
+     */
+    static long lowestOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+}
@@ -0,0 +1,154 @@
+package com.barmej.weatherforecasts.metrics;
+
+import com.barmej.weatherforecasts.network.RequestKey;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * Latency of each stage of a refresh, from building the request url to binding the views, kept
+ * in a {@link LatencyHistogram} per endpoint & stage. All the histograms are created upfront, so
+ * the memory used never grows and recording never allocates nor locks.
+ * <p>
+ * The latencies are shown by the debug LatencyActivity, and dumped with
+ * {@code adb shell dumpsys activity com.barmej.weatherforecasts/.MainActivity}.
+ */
+public final class LatencyMetrics {
+
+    /*
+     * Stages of a refresh:
+     * - url: building or looking up the request url
+     * - queue: from handing the request to NetworkUtils until a dispatcher thread sends it
+     * - connect: DNS lookup, TCP & TLS handshakes of a streamed request
+     * - ttfb: from the connection until the response headers of a streamed request
+     * - body: downloading the body of a streamed request, it is parsed at the same time
+     * - network: whole http exchange of a Volley request, Volley doesn't time its parts
+     * - parse: parsing the json response into the model
+     * - bind: binding the data to the views, the header or one row of a list
+     */
+    public static final int STAGE_URL_BUILD = 0;
+    public static final int STAGE_QUEUE_WAIT = 1;
+    public static final int STAGE_CONNECT = 2;
+    public static final int STAGE_FIRST_BYTE = 3;
+    public static final int STAGE_BODY = 4;
+    public static final int STAGE_NETWORK = 5;
+    public static final int STAGE_PARSE = 6;
+    public static final int STAGE_BIND = 7;
+
+    private static final String[] STAGE_NAMES = {
+            "url", "queue", "connect", "ttfb", "body", "network", "parse", "bind"
+    };
+
+    /**
+     * Names of the endpoints, indexed by the RequestKey endpoints
+     */
+    private static final String[] ENDPOINT_NAMES = {"weather", "forecast", "group"};
+
+    /**
+     * Percentiles shown in the dump
+     */
+    private static final double[] PERCENTILES = {50, 90, 99};
+
+    /**
+     * Object used for the purpose of synchronize lock
+     */
+    private static final Object LOCK = new Object();
+
+    /**
+     * Instance of this class for Singleton
+     */
+    private static LatencyMetrics sInstance;
+
+    /**
+     * Histograms indexed by endpoint then stage
+     */
+    private final LatencyHistogram[][] mHistograms = new LatencyHistogram[ENDPOINT_NAMES.length][STAGE_NAMES.length];
+
+    private LatencyMetrics() {
+        for (LatencyHistogram[] endpointHistograms : mHistograms) {
+            for (int stage = 0; stage < endpointHistograms.length; stage++) {
+                endpointHistograms[stage] = new LatencyHistogram();
+            }
+        }
+    }
+
+    /**
+     * Method used to get an instance of LatencyMetrics class
+     *
+     * @return an instance of LatencyMetrics class
+     */
+    public static LatencyMetrics getInstance() {
+        if (sInstance == null) {
+            synchronized (LOCK) {
+                if (sInstance == null) sInstance = new LatencyMetrics();
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return the current time to pass to {@link #record(int, int, long)} when a stage ends
+     */
+    public static long now() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Record the latency of a stage that started at the given time and ends now
+     *
+     * @param endpoint   one of the RequestKey endpoints, e.g {@link RequestKey#ENDPOINT_WEATHER}
+     * @param stage      one of the stages, e.g {@link #STAGE_PARSE}
+     * @param startNanos time the stage started at, from {@link #now()}
+     */
+    public void record(int endpoint, int stage, long startNanos) {
+        mHistograms[endpoint][stage].record(now() - startNanos);
+    }
+
+    /**
+     * @param endpoint one of the RequestKey endpoints
+     * @param stage    one of the stages
+     * @return the histogram of the stage of the endpoint
+     */
+    public LatencyHistogram getHistogram(int endpoint, int stage) {
+        return mHistograms[endpoint][stage];
+    }
+
+    /**
+     * Forget all the recorded latencies
+     */
+    public void reset() {
+        for (LatencyHistogram[] endpointHistograms : mHistograms) {
+            for (LatencyHistogram histogram : endpointHistograms) {
+                histogram.reset();
+            }
+        }
+    }
+
+    /**
+     * Print a table of the stages that have recorded latencies, in milliseconds
+     *
+     * @param prefix prefix of each line
+     * @param writer writer to print to
+     */
+    public void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.println(String.format(Locale.US, "%-9s %-8s %7s %9s %9s %9s %9s",
+                "endpoint", "stage", "count", "p50", "p90", "p99", "max"));
+        for (int endpoint = 0; endpoint < mHistograms.length; endpoint++) {
+            for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+                LatencyHistogram histogram = mHistograms[endpoint][stage];
+                long count = histogram.getCount();
+                if (count == 0) {
+                    continue;
+                }
+                writer.print(prefix);
+                writer.print(String.format(Locale.US, "%-9s %-8s %7d", ENDPOINT_NAMES[endpoint], STAGE_NAMES[stage], count));
+                for (double percentile : PERCENTILES) {
+                    writer.print(String.format(Locale.US, " %9.2f", histogram.getPercentileMicros(percentile) / 1000.0));
+                }
+                writer.println(String.format(Locale.US, " %9.2f", histogram.getMaxMicros() / 1000.0));
+            }
+        }
+    }
+
+}
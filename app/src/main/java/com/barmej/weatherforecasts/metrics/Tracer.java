@@ -0,0 +1,88 @@
+package com.barmej.weatherforecasts.metrics;
+
+import android.os.Build;
+import android.os.Debug;
+import android.os.Trace;
+
+import com.barmej.weatherforecasts.BuildConfig;
+
+/**
+ * Named sections & counters shown in system traces, e.g Perfetto or systrace, to see where the
+ * frames and the background threads spend their time.
+ * <p>
+ * Tracing is on in debug builds and off in release builds, unless they are built with
+ * {@code -PenableTracing}. When it is off, {@link #ENABLED} is a constant false and the calls
+ * compile to nothing. Sections need API 18 and counters API 29, they are skipped on older
+ * versions. A section must be ended on the thread that began it, in a finally block when the
+ * traced code can throw.
+ */
+public final class Tracer {
+
+    /**
+     * Whether tracing is compiled in, see the TRACING build config field
+     */
+    public static final boolean ENABLED = BuildConfig.TRACING;
+
+    /**
+     * Whether the allocations are being counted, only once the app has started them
+     */
+    private static volatile boolean sCountingAllocations;
+
+    private Tracer() {
+    }
+
+    /**
+     * Start counting the allocations for {@link #getThreadAllocations()}, called once when the
+     * app starts. Counting allocations slows them down a little, so it's only done when tracing.
+     */
+    @SuppressWarnings("deprecation")
+    public static void init() {
+        if (ENABLED) {
+            Debug.startAllocCounting();
+            sCountingAllocations = true;
+        }
+    }
+
+    /**
+     * @param name name of the section, at most 127 characters
+     */
+    public static void beginSection(String name) {
+        if (ENABLED && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(name);
+        }
+    }
+
+    /**
+     * End the last section begun on this thread
+     */
+    public static void endSection() {
+        if (ENABLED && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * @param name  name of the counter track
+     * @param value current value of the counter
+     */
+    public static void setCounter(String name, long value) {
+        if (ENABLED && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.setCounter(name, value);
+        }
+    }
+
+    /**
+     * Take the count before & after some code to trace the number of objects it allocates
+     *
+     * @return number of objects allocated by the current thread since the app started, 0 when
+     * tracing is off or the allocations aren't counted
+     */
+    @SuppressWarnings("deprecation")
+    public static long getThreadAllocations() {
+        if (ENABLED && sCountingAllocations) {
+            return Debug.getThreadAllocCount();
+        }
+        return 0;
+    }
+
+}
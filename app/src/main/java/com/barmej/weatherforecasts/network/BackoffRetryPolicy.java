@@ -0,0 +1,101 @@
+package com.barmej.weatherforecasts.network;
+
+import com.android.volley.NetworkError;
+import com.android.volley.NoConnectionError;
+import com.android.volley.RetryPolicy;
+import com.android.volley.ServerError;
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyError;
+
+import java.util.Random;
+
+/**
+ * Retry policy with exponential backoff and full jitter.
+ * <p>
+ * Only timeouts, network errors and 5xx server errors are retried, and only while the shared
+ * {@link RetryBudget} allows it. Volley never retries on its own dispatcher thread with this
+ * policy: a failed attempt is delivered as an error, and the request asks
+ * {@link #getRetryDelayMillis(VolleyError)} whether to be sent again. {@link NetworkUtils} then
+ * sends it again after a random delay between 0 and {@code BASE_DELAY_MILLIS * 2^retry} (capped),
+ * so that no thread waits during the backoff and devices don't retry in lockstep during an
+ * upstream incident.
+ * <p>
+ * The timeout grows by {@link #TIMEOUT_MULTIPLIER} with each retry, a slow server gets more
+ * time on the next attempt.
+ */
+public class BackoffRetryPolicy implements RetryPolicy {
+
+    private static final int INITIAL_TIMEOUT_MILLIS = 5000;
+    private static final float TIMEOUT_MULTIPLIER = 1.5f;
+    private static final int MAX_RETRIES = 2;
+    private static final long BASE_DELAY_MILLIS = 500;
+    private static final long MAX_DELAY_MILLIS = 8000;
+
+    private static final Random RANDOM = new Random();
+
+    private final RetryBudget mRetryBudget;
+
+    private int mCurrentRetryCount;
+
+    private int mCurrentTimeoutMillis = INITIAL_TIMEOUT_MILLIS;
+
+    /**
+     * @param retryBudget budget shared by all requests
+     */
+    public BackoffRetryPolicy(RetryBudget retryBudget) {
+        mRetryBudget = retryBudget;
+    }
+
+    @Override
+    public int getCurrentTimeout() {
+        return mCurrentTimeoutMillis;
+    }
+
+    @Override
+    public int getCurrentRetryCount() {
+        return mCurrentRetryCount;
+    }
+
+    /**
+     * Volley calls it on its network dispatcher thread, which would retry right away when it
+     * returns. Retries are sent again later instead, see {@link #getRetryDelayMillis(VolleyError)}
+     */
+    @Override
+    public void retry(VolleyError error) throws VolleyError {
+        throw error;
+    }
+
+    /**
+     * Take a retry for a failed attempt, a retry token is withdrawn from the budget
+     *
+     * @param error the error of the attempt
+     * @return delay before the request is sent again, -1 if it shouldn't be retried
+     */
+    public long getRetryDelayMillis(VolleyError error) {
+        if (mCurrentRetryCount >= MAX_RETRIES || !isRetryable(error) || !mRetryBudget.tryWithdraw()) {
+            return -1;
+        }
+        long maxDelay = Math.min(MAX_DELAY_MILLIS, BASE_DELAY_MILLIS << mCurrentRetryCount);
+        mCurrentRetryCount++;
+        mCurrentTimeoutMillis = (int) (mCurrentTimeoutMillis * TIMEOUT_MULTIPLIER);
+        return (long) (RANDOM.nextDouble() * maxDelay);
+    }
+
+    /**
+     * @param error the request error
+     * @return true if the error is temporary and the upstream server is likely to blame
+     */
+    static boolean isRetryable(VolleyError error) {
+        if (error instanceof NoConnectionError) {
+            // The device is offline, retrying right away won't help
+            return false;
+        }
+        if (error instanceof ServerError) {
+            // ClientError is a ServerError too, a 4xx is the fault of the request and won't change
+            return error.networkResponse != null && error.networkResponse.statusCode >= 500;
+        }
+        return error instanceof TimeoutError
+                || error instanceof NetworkError;
+    }
+
+}
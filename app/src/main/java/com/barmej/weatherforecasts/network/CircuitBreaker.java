@@ -0,0 +1,127 @@
+package com.barmej.weatherforecasts.network;
+
+import android.os.SystemClock;
+
+import com.android.volley.VolleyError;
+
+/**
+ * A circuit breaker for one OpenWeatherMap endpoint.
+ * <p>
+ * After {@link #FAILURE_THRESHOLD} consecutive upstream failures the circuit opens and requests to
+ * the endpoint fail fast with an {@link OpenCircuitError}, so callers show cached data right away
+ * instead of waiting on timeouts. After {@link #OPEN_DURATION_MILLIS} a single trial request is let
+ * through: its success closes the circuit, its failure opens it again for twice as long.
+ */
+public class CircuitBreaker {
+
+    /**
+     * Consecutive failures that open the circuit
+     */
+    private static final int FAILURE_THRESHOLD = 4;
+
+    /**
+     * Initial & maximum time the circuit stays open before a trial request
+     */
+    private static final long OPEN_DURATION_MILLIS = 30 * 1000;
+    private static final long MAX_OPEN_DURATION_MILLIS = 5 * 60 * 1000;
+
+    /**
+     * Time after which a trial request that never reported back, e.g because it was cancelled,
+     * is given up and another trial is allowed
+     */
+    private static final long TRIAL_TIMEOUT_MILLIS = 30 * 1000;
+
+    /**
+     * Error delivered to requests rejected while the circuit is open
+     */
+    public static class OpenCircuitError extends VolleyError {
+
+        OpenCircuitError(String endpoint) {
+            super("Circuit open for " + endpoint);
+        }
+
+    }
+
+    private final String mEndpoint;
+
+    private int mConsecutiveFailures;
+
+    /**
+     * Time the circuit opened at, 0 when closed
+     */
+    private long mOpenedAt;
+
+    private long mOpenDuration = OPEN_DURATION_MILLIS;
+
+    /**
+     * Whether the trial request of a half open circuit is in flight, and when it was sent
+     */
+    private boolean mTrialInFlight;
+    private long mTrialStartedAt;
+
+    /**
+     * @param endpoint name of the endpoint, used in errors
+     */
+    CircuitBreaker(String endpoint) {
+        mEndpoint = endpoint;
+    }
+
+    /**
+     * @return true if a request may be sent, false if it should fail fast
+     */
+    public synchronized boolean allowRequest() {
+        if (mOpenedAt == 0) {
+            return true;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (now - mOpenedAt < mOpenDuration
+                || (mTrialInFlight && now - mTrialStartedAt < TRIAL_TIMEOUT_MILLIS)) {
+            return false;
+        }
+        // Half open: let a single trial request through
+        mTrialInFlight = true;
+        mTrialStartedAt = now;
+        return true;
+    }
+
+    /**
+     * @return the error to deliver to a request rejected by this circuit
+     */
+    OpenCircuitError createOpenCircuitError() {
+        return new OpenCircuitError(mEndpoint);
+    }
+
+    /**
+     * Record a successful request, which closes the circuit
+     */
+    public synchronized void onSuccess() {
+        mConsecutiveFailures = 0;
+        mOpenedAt = 0;
+        mOpenDuration = OPEN_DURATION_MILLIS;
+        mTrialInFlight = false;
+    }
+
+    /**
+     * Record a request that failed because of the upstream server
+     */
+    public synchronized void onFailure() {
+        mConsecutiveFailures++;
+        if (mTrialInFlight) {
+            // The trial failed, stay open longer
+            mTrialInFlight = false;
+            mOpenDuration = Math.min(mOpenDuration * 2, MAX_OPEN_DURATION_MILLIS);
+            mOpenedAt = SystemClock.elapsedRealtime();
+        } else if (mOpenedAt == 0 && mConsecutiveFailures >= FAILURE_THRESHOLD) {
+            mOpenedAt = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * Record a request that ended without telling anything about the upstream server, e.g
+     * cancelled or failed because the device is offline
+     */
+    public synchronized void onIgnored() {
+        mTrialInFlight = false;
+    }
+
+}
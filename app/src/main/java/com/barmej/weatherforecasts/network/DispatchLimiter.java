@@ -0,0 +1,116 @@
+package com.barmej.weatherforecasts.network;
+
+import com.android.volley.Request;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Bounds the number of requests of each priority class running in the Volley RequestQueue at the
+ * same time.
+ * <p>
+ * Volley's network dispatchers take requests by priority, but a dispatcher busy with a slow low
+ * priority request can't serve anything else. Capping the lower classes below the dispatcher pool
+ * size keeps dispatchers free for the header of the main screen, whatever bulk traffic is running.
+ */
+class DispatchLimiter {
+
+    /**
+     * Maximum number of running requests of each class, indexed by {@link Request.Priority#ordinal()}.
+     * Volley runs 4 network dispatchers by default
+     */
+    private static final int[] MAX_RUNNING_REQUESTS = {
+            // LOW: other locations & prefetch
+            2,
+            // NORMAL: forecasts
+            3,
+            // HIGH
+            3,
+            // IMMEDIATE: the header of the main screen
+            4
+    };
+
+    private final int[] mRunningRequests = new int[MAX_RUNNING_REQUESTS.length];
+
+    private final List<Deque<Request<?>>> mWaitingRequests = new ArrayList<>();
+
+    /**
+     * Requests counted as running, the finish callback is also called for requests that never
+     * went through this limiter
+     */
+    private final Set<Request<?>> mStartedRequests = Collections.newSetFromMap(new IdentityHashMap<Request<?>, Boolean>());
+
+    DispatchLimiter() {
+        for (int i = 0; i < MAX_RUNNING_REQUESTS.length; i++) {
+            mWaitingRequests.add(new ArrayDeque<Request<?>>());
+        }
+    }
+
+    /**
+     * @param request request to start
+     * @return true if the request can be added to the RequestQueue now, false if it has to wait
+     * for a running request of its class to finish
+     */
+    synchronized boolean tryStart(Request<?> request) {
+        int priorityClass = request.getPriority().ordinal();
+        if (mRunningRequests[priorityClass] >= MAX_RUNNING_REQUESTS[priorityClass]) {
+            mWaitingRequests.get(priorityClass).add(request);
+            return false;
+        }
+        mRunningRequests[priorityClass]++;
+        mStartedRequests.add(request);
+        return true;
+    }
+
+    /**
+     * @param request request that finished, successfully or not
+     * @return the waiting requests that can be added to the RequestQueue now
+     */
+    synchronized List<Request<?>> onFinished(Request<?> request) {
+        if (!mStartedRequests.remove(request)) {
+            return Collections.emptyList();
+        }
+        int priorityClass = request.getPriority().ordinal();
+        mRunningRequests[priorityClass]--;
+
+        List<Request<?>> requestsToStart = new ArrayList<>();
+        Deque<Request<?>> waitingRequests = mWaitingRequests.get(priorityClass);
+        while (mRunningRequests[priorityClass] < MAX_RUNNING_REQUESTS[priorityClass] && !waitingRequests.isEmpty()) {
+            Request<?> waitingRequest = waitingRequests.poll();
+            if (waitingRequest.isCanceled()) {
+                // Never added to the RequestQueue, so it won't finish
+                continue;
+            }
+            mRunningRequests[priorityClass]++;
+            mStartedRequests.add(waitingRequest);
+            requestsToStart.add(waitingRequest);
+        }
+        return requestsToStart;
+    }
+
+    /**
+     * Cancel and drop the waiting requests with the given tag, they were never added to the
+     * RequestQueue
+     *
+     * @param tag tag of the requests to cancel
+     */
+    synchronized void cancelAll(Object tag) {
+        for (Deque<Request<?>> waitingRequests : mWaitingRequests) {
+            Iterator<Request<?>> iterator = waitingRequests.iterator();
+            while (iterator.hasNext()) {
+                Request<?> request = iterator.next();
+                if (tag.equals(request.getTag())) {
+                    request.cancel();
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,316 @@
+package com.barmej.weatherforecasts.network;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.JsonReader;
+import android.util.Log;
+import android.util.MalformedJsonException;
+
+import com.android.volley.ClientError;
+import com.android.volley.NetworkError;
+import com.android.volley.NetworkResponse;
+import com.android.volley.NoConnectionError;
+import com.android.volley.ParseError;
+import com.android.volley.ServerError;
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyError;
+import com.barmej.weatherforecasts.entity.Forecast;
+import com.barmej.weatherforecasts.entity.ForecastLists;
+import com.barmej.weatherforecasts.metrics.LatencyMetrics;
+import com.barmej.weatherforecasts.utils.OpenWeatherDataParser;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.Collections;
+
+/**
+ * A forecast endpoint request that parses the response body while it is being downloaded.
+ * <p>
+ * Volley reads the whole body into memory before parsing it. This request reads it from the
+ * connection with a {@link JsonReader} instead, and publishes the slots of the hours forecasts
+ * list as soon as each of them is parsed, so they show before the rest of the body has arrived
+ * on slow networks. The full forecasts are published once the body is complete.
+ * <p>
+ * Requests are sent with {@link NetworkUtils#addToStreamQueue(ForecastStreamRequest)}, which
+ * applies the circuit breaker and the rate limiter of the forecast endpoint, and are retried
+ * with {@link BackoffRetryPolicy} within the shared {@link RetryBudget}. Being sent outside of
+ * Volley, they have neither Volley's http disk cache nor a priority class of the
+ * {@link DispatchLimiter}. All the listener callbacks are delivered on the main thread, none
+ * after the request is cancelled.
+ */
+public class ForecastStreamRequest {
+
+    private static final String TAG = ForecastStreamRequest.class.getSimpleName();
+
+    /**
+     * Interface used to receive the forecasts while they are parsed
+     */
+    public interface Listener {
+
+        /**
+         * @param forecast a slot of the hours forecasts list
+         * @param index    position of the slot in the list
+         */
+        void onHourForecastReceived(Forecast forecast, int index);
+
+        /**
+         * @param forecastLists all the forecasts of the response
+         */
+        void onForecastsReceived(ForecastLists forecastLists);
+
+        /**
+         * @param error the request error
+         */
+        void onErrorResponse(VolleyError error);
+
+    }
+
+    private final String mUrl;
+
+    private final Listener mListener;
+
+    private final CircuitBreaker mCircuitBreaker;
+
+    private final RetryBudget mRetryBudget;
+
+    /**
+     * Retries of the request, used outside of Volley for its backoff & the shared retry budget
+     */
+    private final BackoffRetryPolicy mRetryPolicy;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private Object mTag;
+
+    private volatile boolean mCanceled;
+
+    /**
+     * Time the request was first handed to NetworkUtils, for the latency metrics
+     */
+    private volatile long mSubmittedNanos;
+
+    /**
+     * Connection of the running request, null before it is sent and once it is complete
+     */
+    private volatile HttpURLConnection mConnection;
+
+    /**
+     * @param networkUtils NetworkUtils instance holding the circuit breakers & the retry budget
+     * @param url          url of the forecast endpoint
+     * @param listener     listener to receive the forecasts
+     */
+    public ForecastStreamRequest(NetworkUtils networkUtils, String url, Listener listener) {
+        mUrl = url;
+        mListener = listener;
+        mCircuitBreaker = networkUtils.getCircuitBreaker(RequestKey.ENDPOINT_FORECAST);
+        mRetryBudget = networkUtils.getRetryBudget();
+        mRetryPolicy = new BackoffRetryPolicy(mRetryBudget);
+    }
+
+    public void setTag(Object tag) {
+        mTag = tag;
+    }
+
+    public Object getTag() {
+        return mTag;
+    }
+
+    /**
+     * Cancel the request, the download stops and no more callbacks are delivered
+     */
+    public void cancel() {
+        mCanceled = true;
+        HttpURLConnection connection = mConnection;
+        if (connection != null) {
+            // Unblocks the reading thread
+            connection.disconnect();
+        }
+    }
+
+    public boolean isCanceled() {
+        return mCanceled;
+    }
+
+    /**
+     * @return the circuit breaker of the forecast endpoint
+     */
+    CircuitBreaker getCircuitBreaker() {
+        return mCircuitBreaker;
+    }
+
+    /**
+     * Start timing the queue wait, retries of a request delayed by the rate limiter keep the first time
+     */
+    void markSubmitted() {
+        if (mSubmittedNanos == 0) {
+            mSubmittedNanos = LatencyMetrics.now();
+        }
+    }
+
+    /**
+     * Download & parse the response, must be called on a background thread. A failed attempt that
+     * {@link BackoffRetryPolicy} retries isn't delivered, NetworkUtils sends the request again
+     * after the returned delay instead of holding the thread meanwhile.
+     *
+     * @return delay before the request is sent again, -1 once it is delivered or cancelled
+     */
+    long perform() {
+        if (mCanceled) {
+            // Give back the trial of a half open circuit
+            mCircuitBreaker.onIgnored();
+            return -1;
+        }
+        if (mSubmittedNanos != 0) {
+            LatencyMetrics.getInstance().record(RequestKey.ENDPOINT_FORECAST, LatencyMetrics.STAGE_QUEUE_WAIT, mSubmittedNanos);
+            // A retry times its queue wait from when it is sent again, not across the backoff
+            mSubmittedNanos = 0;
+        }
+        VolleyError error = performAttempt();
+        if (error == null) {
+            return -1;
+        }
+        if (!mCanceled) {
+            long retryDelay = mRetryPolicy.getRetryDelayMillis(error);
+            if (retryDelay >= 0) {
+                // Only the last attempt reports to the circuit breaker, the retry goes through it again
+                mCircuitBreaker.onIgnored();
+                return retryDelay;
+            }
+        }
+        deliverError(error);
+        return -1;
+    }
+
+    /**
+     * Download & parse the response once, the hours slots already published are published again
+     * by a retry
+     *
+     * @return the error of the attempt, null if the forecasts were delivered
+     */
+    private VolleyError performAttempt() {
+        if (mCanceled) {
+            // Cancelled since perform() checked
+            return new VolleyError("Request canceled");
+        }
+        LatencyMetrics metrics = LatencyMetrics.getInstance();
+        HttpURLConnection connection = null;
+        try {
+            long start = LatencyMetrics.now();
+            connection = (HttpURLConnection) new URL(mUrl).openConnection();
+            connection.setConnectTimeout(mRetryPolicy.getCurrentTimeout());
+            connection.setReadTimeout(mRetryPolicy.getCurrentTimeout());
+            mConnection = connection;
+            // Connect explicitly so that the connection & the wait for the response are timed apart
+            connection.connect();
+            metrics.record(RequestKey.ENDPOINT_FORECAST, LatencyMetrics.STAGE_CONNECT, start);
+
+            start = LatencyMetrics.now();
+            int statusCode = connection.getResponseCode();
+            metrics.record(RequestKey.ENDPOINT_FORECAST, LatencyMetrics.STAGE_FIRST_BYTE, start);
+            if (statusCode != HttpURLConnection.HTTP_OK) {
+                NetworkResponse response = new NetworkResponse(statusCode, new byte[0],
+                        Collections.<String, String>emptyMap(), false);
+                if (statusCode >= 500) {
+                    return new ServerError(response);
+                }
+                // Like Volley, a request error isn't a server error and isn't retried
+                return statusCode >= 400 ? new ClientError(response) : new VolleyError(response);
+            }
+
+            start = LatencyMetrics.now();
+            JsonReader reader = new JsonReader(new InputStreamReader(
+                    new BufferedInputStream(connection.getInputStream()), "UTF-8"));
+            try {
+                ForecastLists forecastLists = OpenWeatherDataParser.getForecastsDataFromReader(reader,
+                        new OpenWeatherDataParser.OnForecastParsedListener() {
+                            @Override
+                            public void onForecastParsed(Forecast forecast, int index) {
+                                // A superseded request stops publishing right away, the read fails soon after
+                                if (!mCanceled && index < OpenWeatherDataParser.HOURS_FORECASTS_COUNT) {
+                                    deliverHourForecast(forecast, index);
+                                }
+                            }
+                        });
+                if (forecastLists == null) {
+                    return new ParseError();
+                }
+                metrics.record(RequestKey.ENDPOINT_FORECAST, LatencyMetrics.STAGE_BODY, start);
+                deliverResponse(forecastLists);
+                return null;
+            } finally {
+                reader.close();
+            }
+        } catch (SocketTimeoutException e) {
+            return new TimeoutError();
+        } catch (UnknownHostException e) {
+            return new NoConnectionError(e);
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+            // Unexpected JSON structure
+            return new ParseError(e);
+        } catch (IOException e) {
+            if (!mCanceled) {
+                Log.w(TAG, "Forecast stream failed", e);
+            }
+            return new NetworkError(e);
+        } finally {
+            mConnection = null;
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Report the error to the circuit breaker, and to the listener on the main thread
+     *
+     * @param error the request error
+     */
+    void deliverError(final VolleyError error) {
+        // Requests rejected by an open circuit were never sent, they tell nothing about the server
+        if (!(error instanceof CircuitBreaker.OpenCircuitError)) {
+            if (!mCanceled && (BackoffRetryPolicy.isRetryable(error) || WeatherRequest.isThrottled(error))) {
+                mCircuitBreaker.onFailure();
+            } else {
+                mCircuitBreaker.onIgnored();
+            }
+        }
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!mCanceled) {
+                    mListener.onErrorResponse(error);
+                }
+            }
+        });
+    }
+
+    private void deliverHourForecast(final Forecast forecast, final int index) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!mCanceled) {
+                    mListener.onHourForecastReceived(forecast, index);
+                }
+            }
+        });
+    }
+
+    private void deliverResponse(final ForecastLists forecastLists) {
+        mCircuitBreaker.onSuccess();
+        mRetryBudget.onSuccess();
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!mCanceled) {
+                    mListener.onForecastsReceived(forecastLists);
+                }
+            }
+        });
+    }
+
+}
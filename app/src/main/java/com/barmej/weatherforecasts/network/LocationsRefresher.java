@@ -0,0 +1,401 @@
+package com.barmej.weatherforecasts.network;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.barmej.weatherforecasts.cache.WeatherDataCache;
+import com.barmej.weatherforecasts.concurrent.AppExecutors;
+import com.barmej.weatherforecasts.concurrent.TaskScope;
+import com.barmej.weatherforecasts.entity.City;
+import com.barmej.weatherforecasts.entity.WeatherInfo;
+import com.barmej.weatherforecasts.metrics.LatencyMetrics;
+import com.barmej.weatherforecasts.utils.OpenWeatherDataParser;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Refreshes the current weather of several saved locations at once.
+ * <p>
+ * Locations with a known city id are batched into calls to the group endpoint, the rest get one
+ * weather call each. No more than {@link #MAX_CONCURRENT_REQUESTS} calls are in flight at any time,
+ * the others wait in a queue and are sent as soon as a running call completes, and every location
+ * is reported to the listener as soon as its own data arrives.
+ * <p>
+ * Responses are parsed on the {@link AppExecutors#cpu()} pool. Each refresh runs in its own
+ * {@link TaskScope}, cancelled by the next refresh or when the lifecycle owner stops, which drops
+ * the results still on the way. All methods must be called, and all callbacks are delivered, on
+ * the main thread.
+ */
+public class LocationsRefresher {
+
+    private static final String TAG = LocationsRefresher.class.getSimpleName();
+
+    /**
+     * Maximum number of calls running at the same time
+     */
+    private static final int MAX_CONCURRENT_REQUESTS = 3;
+
+    /**
+     * Interface used to report the refresh progress
+     */
+    public interface Listener {
+
+        /**
+         * @param city        the refreshed location
+         * @param weatherInfo the current weather of the location
+         */
+        void onLocationRefreshed(City city, WeatherInfo weatherInfo);
+
+        /**
+         * @param city            the location that couldn't be refreshed
+         * @param lastWeatherInfo the last known weather of the location, null if not cached
+         */
+        void onLocationRefreshFailed(City city, WeatherInfo lastWeatherInfo);
+
+        /**
+         * Called once all the locations of the refresh got reported
+         */
+        void onRefreshFinished();
+
+    }
+
+    /**
+     * An instance of NetworkUtils for all network related operations
+     */
+    private NetworkUtils mNetworkUtils;
+
+    /**
+     * Application context used to build the urls
+     */
+    private Context mContext;
+
+    private Listener mListener;
+
+    /**
+     * Activity showing the refreshed locations, refreshes are cancelled when it stops
+     */
+    private LifecycleOwner mLifecycleOwner;
+
+    /**
+     * Memory cache the refreshed weather is saved to, so that picking a location shows it at once
+     */
+    private WeatherDataCache mWeatherDataCache;
+
+    /**
+     * Calls waiting for a free slot
+     */
+    private Deque<Request<?>> mPendingRequests = new ArrayDeque<>();
+
+    /**
+     * Number of calls sent and not completed yet
+     */
+    private int mInFlightRequests;
+
+    /**
+     * Scope of the refresh in progress, null before the first refresh
+     */
+    private TaskScope mScope;
+
+    /**
+     * Whether the refresh in progress was asked by the user
+     */
+    private boolean mInteractive;
+
+    public LocationsRefresher(Context context, LifecycleOwner lifecycleOwner, Listener listener) {
+        mContext = context.getApplicationContext();
+        mNetworkUtils = NetworkUtils.getInstance(context);
+        mLifecycleOwner = lifecycleOwner;
+        mListener = listener;
+        mWeatherDataCache = WeatherDataCache.getInstance();
+    }
+
+    /**
+     * Refresh the current weather of the given locations, cancelling any refresh in progress
+     *
+     * @param cities      locations to refresh
+     * @param interactive true if the user asked for the refresh, false for automatic refreshes
+     *                    which are deferred first when the rate limit is reached
+     */
+    public void refresh(List<City> cities, boolean interactive) {
+        cancel();
+        mInteractive = interactive;
+        mScope = new TaskScope();
+        mScope.cancelOn(mLifecycleOwner, Lifecycle.Event.ON_STOP);
+        mScope.onCancel(new Runnable() {
+            @Override
+            public void run() {
+                // The calls of the cancelled refresh no longer own the slots
+                mPendingRequests.clear();
+                mInFlightRequests = 0;
+                mNetworkUtils.cancelRequests(TAG);
+            }
+        });
+
+        List<City> group = new ArrayList<>();
+        for (City city : cities) {
+            if (city.getId() > 0) {
+                group.add(city);
+                if (group.size() == NetworkUtils.MAX_GROUP_SIZE) {
+                    mPendingRequests.add(createGroupRequest(group));
+                    group = new ArrayList<>();
+                }
+            } else {
+                mPendingRequests.add(createWeatherRequest(city));
+            }
+        }
+        if (group.size() == 1) {
+            // The group endpoint would only add overhead for a single city
+            mPendingRequests.add(createWeatherRequest(group.get(0)));
+        } else if (!group.isEmpty()) {
+            mPendingRequests.add(createGroupRequest(group));
+        }
+
+        if (mPendingRequests.isEmpty()) {
+            mListener.onRefreshFinished();
+        } else {
+            sendPendingRequests();
+        }
+    }
+
+    /**
+     * Cancel the refresh in progress, no more callbacks will be delivered for it
+     */
+    public void cancel() {
+        if (mScope != null) {
+            mScope.cancel();
+        }
+    }
+
+    /**
+     * Send queued calls while there are free slots
+     */
+    private void sendPendingRequests() {
+        while (mInFlightRequests < MAX_CONCURRENT_REQUESTS && !mPendingRequests.isEmpty()) {
+            mInFlightRequests++;
+            mNetworkUtils.addToRequestQueue(mPendingRequests.poll());
+        }
+    }
+
+    /**
+     * Free the slot of a completed call and send the next one, or report the end of the refresh
+     */
+    private void onRequestCompleted() {
+        mInFlightRequests--;
+        if (mInFlightRequests == 0 && mPendingRequests.isEmpty()) {
+            mListener.onRefreshFinished();
+        } else {
+            sendPendingRequests();
+        }
+    }
+
+    /**
+     * Report a location that couldn't be refreshed, with its last known weather if it is cached
+     *
+     * @param city the location that couldn't be refreshed
+     */
+    private void onLocationFailed(City city) {
+        mListener.onLocationRefreshFailed(city, mWeatherDataCache.getLastWeatherInfo(city));
+    }
+
+    /**
+     * Report a location whose response body is the same as the one its cached weather was parsed
+     * from, with its cached weather
+     *
+     * @param city        the refreshed location
+     * @param fingerprint fingerprint of the response body
+     */
+    private void onLocationUnchanged(City city, long fingerprint) {
+        WeatherInfo lastWeatherInfo = mWeatherDataCache.renewWeatherInfo(city, fingerprint);
+        if (lastWeatherInfo != null) {
+            mListener.onLocationRefreshed(city, lastWeatherInfo);
+        } else {
+            // Evicted or replaced since the request was sent, the body wasn't parsed
+            onLocationFailed(city);
+        }
+    }
+
+    /**
+     * Report the locations of a parsed group response, matched by id, a location missing from
+     * the response has failed
+     *
+     * @param cities          the locations of the group request
+     * @param weatherInfoList the parsed current weather of the locations, null if not parsed
+     * @param fingerprint     fingerprint of the response body
+     */
+    private void onGroupParsed(List<City> cities, List<WeatherInfo> weatherInfoList, long fingerprint) {
+        if (weatherInfoList == null) {
+            weatherInfoList = Collections.emptyList();
+        }
+        for (City city : cities) {
+            WeatherInfo cityWeatherInfo = null;
+            for (WeatherInfo weatherInfo : weatherInfoList) {
+                if (weatherInfo.getId() == city.getId()) {
+                    cityWeatherInfo = weatherInfo;
+                    break;
+                }
+            }
+            if (cityWeatherInfo != null) {
+                mWeatherDataCache.putWeatherInfo(city, cityWeatherInfo, fingerprint);
+                mListener.onLocationRefreshed(city, cityWeatherInfo);
+            } else {
+                onLocationFailed(city);
+            }
+        }
+        onRequestCompleted();
+    }
+
+    /**
+     * @param city location to request the current weather for
+     * @return a weather endpoint request for the location
+     */
+    private Request<JSONObject> createWeatherRequest(final City city) {
+        final TaskScope scope = mScope;
+        String url = NetworkUtils.getWeatherUrl(mContext, city);
+        WeatherRequest request = new WeatherRequest(mNetworkUtils, RequestKey.ENDPOINT_WEATHER, url,
+                new WeatherRequest.Listener() {
+                    @Override
+                    public void onResponse(final JSONObject response, final long fingerprint) {
+                        // Drop the callbacks of a cancelled refresh, it no longer owns the slots
+                        if (scope.isCancelled()) {
+                            return;
+                        }
+                        if (WeatherRequest.isUnchanged(response)) {
+                            // Same body as the last data of the location, no need to parse it again
+                            onLocationUnchanged(city, fingerprint);
+                            onRequestCompleted();
+                            return;
+                        }
+                        // The slot is freed once the response is parsed
+                        scope.submit(AppExecutors.getInstance().cpu(), new Callable<WeatherInfo>() {
+                            @Override
+                            public WeatherInfo call() throws JSONException {
+                                long start = LatencyMetrics.now();
+                                WeatherInfo weatherInfo = OpenWeatherDataParser.getWeatherInfoObjectFromJson(response);
+                                LatencyMetrics.getInstance().record(RequestKey.ENDPOINT_WEATHER, LatencyMetrics.STAGE_PARSE, start);
+                                return weatherInfo;
+                            }
+                        }, new TaskScope.Callback<WeatherInfo>() {
+                            @Override
+                            public void onResult(WeatherInfo weatherInfo) {
+                                if (weatherInfo != null) {
+                                    mWeatherDataCache.putWeatherInfo(city, weatherInfo, fingerprint);
+                                    mListener.onLocationRefreshed(city, weatherInfo);
+                                } else {
+                                    onLocationFailed(city);
+                                }
+                                onRequestCompleted();
+                            }
+
+                            @Override
+                            public void onError(Exception e) {
+                                e.printStackTrace();
+                                onLocationFailed(city);
+                                onRequestCompleted();
+                            }
+                        });
+                    }
+                }, new Response.ErrorListener() {
+            @Override
+            public void onErrorResponse(VolleyError error) {
+                if (scope.isCancelled()) {
+                    return;
+                }
+                Log.w(TAG, "Weather request failed for " + city.getName(), error);
+                onLocationFailed(city);
+                onRequestCompleted();
+            }
+        });
+        request.setInteractive(mInteractive);
+        request.setPriority(Request.Priority.LOW);
+        request.setSkipUnchanged(mWeatherDataCache.getResponseFingerprint(city));
+        request.setTag(TAG);
+        return request;
+    }
+
+    /**
+     * @param cities locations with a known city id to request the current weather for
+     * @return a group endpoint request for the locations
+     */
+    private Request<JSONObject> createGroupRequest(final List<City> cities) {
+        final TaskScope scope = mScope;
+        String url = NetworkUtils.getGroupWeatherUrl(mContext, cities);
+        WeatherRequest request = new WeatherRequest(mNetworkUtils, RequestKey.ENDPOINT_GROUP, url,
+                new WeatherRequest.Listener() {
+                    @Override
+                    public void onResponse(final JSONObject response, final long fingerprint) {
+                        if (scope.isCancelled()) {
+                            return;
+                        }
+                        if (WeatherRequest.isUnchanged(response)) {
+                            // Same body as the last data of the locations, no need to parse it again
+                            for (City city : cities) {
+                                onLocationUnchanged(city, fingerprint);
+                            }
+                            onRequestCompleted();
+                            return;
+                        }
+                        // The slot is freed once the response is parsed
+                        scope.submit(AppExecutors.getInstance().cpu(), new Callable<List<WeatherInfo>>() {
+                            @Override
+                            public List<WeatherInfo> call() throws JSONException {
+                                long start = LatencyMetrics.now();
+                                List<WeatherInfo> weatherInfoList = OpenWeatherDataParser.getWeatherInfoListFromGroupJson(response);
+                                LatencyMetrics.getInstance().record(RequestKey.ENDPOINT_GROUP, LatencyMetrics.STAGE_PARSE, start);
+                                return weatherInfoList;
+                            }
+                        }, new TaskScope.Callback<List<WeatherInfo>>() {
+                            @Override
+                            public void onResult(List<WeatherInfo> weatherInfoList) {
+                                onGroupParsed(cities, weatherInfoList, fingerprint);
+                            }
+
+                            @Override
+                            public void onError(Exception e) {
+                                e.printStackTrace();
+                                onGroupParsed(cities, null, fingerprint);
+                            }
+                        });
+                    }
+                }, new Response.ErrorListener() {
+            @Override
+            public void onErrorResponse(VolleyError error) {
+                if (scope.isCancelled()) {
+                    return;
+                }
+                Log.w(TAG, "Group request failed for " + cities.size() + " cities", error);
+                for (City city : cities) {
+                    onLocationFailed(city);
+                }
+                onRequestCompleted();
+            }
+        });
+        request.setInteractive(mInteractive);
+        request.setPriority(Request.Priority.LOW);
+        // The body is only skipped when the weather of every location was parsed from it
+        long cachedFingerprint = mWeatherDataCache.getResponseFingerprint(cities.get(0));
+        for (City city : cities) {
+            if (mWeatherDataCache.getResponseFingerprint(city) != cachedFingerprint) {
+                cachedFingerprint = WeatherDataCache.NO_FINGERPRINT;
+                break;
+            }
+        }
+        request.setSkipUnchanged(cachedFingerprint);
+        request.setTag(TAG);
+        return request;
+    }
+
+}
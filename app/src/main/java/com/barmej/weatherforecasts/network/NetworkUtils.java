@@ -2,17 +2,32 @@ package com.barmej.weatherforecasts.network;
 
 import android.content.Context;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import com.android.volley.Request;
 import com.android.volley.RequestQueue;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.ClearCacheRequest;
 import com.android.volley.toolbox.Volley;
 import com.barmej.weatherforecasts.R;
+import com.barmej.weatherforecasts.cache.TrimmableCache;
+import com.barmej.weatherforecasts.concurrent.AppExecutors;
+import com.barmej.weatherforecasts.entity.City;
+import com.barmej.weatherforecasts.metrics.LatencyMetrics;
+import com.barmej.weatherforecasts.metrics.Tracer;
+import com.barmej.weatherforecasts.utils.OpenWeatherDataParser;
+import com.barmej.weatherforecasts.utils.PreferencesSnapshot;
 import com.barmej.weatherforecasts.utils.SharedPreferencesHelper;
 
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.util.Locale;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
 
 
 /**
@@ -37,11 +52,32 @@ public final class NetworkUtils {
      */
     private static final String FORECAST_ENDPOINT = "forecast";
 
+    /**
+     * Current weather of several cities endpoint
+     */
+    private static final String GROUP_ENDPOINT = "group";
+
+    /**
+     * Maximum number of city ids accepted by the group endpoint in a single call
+     */
+    public static final int MAX_GROUP_SIZE = 20;
+
     /**
      * The query parameter allows us to determine the location
      */
     private static final String QUERY_PARAM = "q";
 
+    /**
+     * The id parameter allows us to determine the location by OpenWeatherMap city id
+     */
+    private static final String ID_PARAM = "id";
+
+    /*
+     * The lat & lon parameters allow us to determine the location by coordinates
+     */
+    private static final String LAT_PARAM = "lat";
+    private static final String LON_PARAM = "lon";
+
 
     /* The FORMAT parameter allows us to designate whether we want JSON or XML from our API */
     private static final String FORMAT_PARAM = "mode";
@@ -52,20 +88,52 @@ public final class NetworkUtils {
     private static final String UNITS_PARAM = "units";
 
     /**
-     * Lang parameter to specify the language of the response
+     * The app id allow us to pass our API key to OpenWeatherMap to be a valid response
      */
-    private static final String LANG_PARAM = "lang";
+    private static final String APP_ID_PARAM = "appid";
 
     /**
-     * The app id allow us to pass our API key to OpenWeatherMap to be a valid response
+     * The cnt parameter limits the number of forecast slots returned by the forecast endpoint
      */
-    private static final String APP_ID_PARAM = "appid";
+    private static final String COUNT_PARAM = "cnt";
 
     /**
      * The FORMAT we want our API to return
      */
     private static final String FORMAT = "json";
 
+    /**
+     * The units system all data is requested and stored in, whatever the user preference is.
+     * Conversion to the preferred measurement system happens at presentation time in {@link com.barmej.weatherforecasts.utils.WeatherUtils}
+     */
+    private static final String CANONICAL_UNITS = "metric";
+
+    /**
+     * Initial capacity of the url builders, enough for any of our urls
+     */
+    private static final int URL_CAPACITY = 192;
+
+    /**
+     * Directory of Volley's http cache, the default of {@link Volley#newRequestQueue(Context)}
+     */
+    private static final String HTTP_CACHE_DIR = "volley";
+
+    /**
+     * Estimated heap size in bytes of the header Volley keeps for each cached response: the url
+     * key and about ten response headers of OpenWeatherMap
+     */
+    private static final int HTTP_CACHE_HEADER_SIZE_BYTES = 1536;
+
+    /**
+     * Query parameters shared by all endpoints, built on first use
+     */
+    private static volatile String sCommonParameters;
+
+    /**
+     * Urls of the preferred location, built again only when the location preferences change
+     */
+    private static volatile PreferredLocationUrls sPreferredLocationUrls;
+
     /**
      * Object used for the purpose of synchronize lock
      */
@@ -83,10 +151,77 @@ public final class NetworkUtils {
     private Context mContext;
 
     /**
-     * Instance of Volley Request Queue
+     * Instance of Volley Request Queue, null until it is created on the background thread
      */
     private RequestQueue mRequestQueue;
 
+    /**
+     * Requests added before the RequestQueue is ready, guarded by mQueueLock
+     */
+    private final List<Request<?>> mBufferedRequests = new ArrayList<>();
+
+    /**
+     * Lock guarding the RequestQueue creation & the buffered requests
+     */
+    private final Object mQueueLock = new Object();
+
+    /**
+     * Circuit breakers of the endpoints, indexed by the RequestKey endpoints
+     */
+    private final CircuitBreaker[] mCircuitBreakers = {
+            new CircuitBreaker(WEATHER_ENDPOINT),
+            new CircuitBreaker(FORECAST_ENDPOINT),
+            new CircuitBreaker(GROUP_ENDPOINT)
+    };
+
+    /**
+     * Retry budget shared by all requests
+     */
+    private final RetryBudget mRetryBudget = new RetryBudget();
+
+    /**
+     * Handler used to deliver the errors of requests rejected by an open circuit
+     */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Limits the rate of requests to each endpoint
+     */
+    private final RateLimiter mRateLimiter = new RateLimiter();
+
+    /*
+     * Requests waiting for the rate limiter, interactive ones are sent first. Guarded by
+     * mDeferredRequestsLock
+     */
+    private final Deque<WeatherRequest> mDeferredInteractiveRequests = new ArrayDeque<>();
+    private final Deque<WeatherRequest> mDeferredBackgroundRequests = new ArrayDeque<>();
+    private final Object mDeferredRequestsLock = new Object();
+
+    /**
+     * Bounds the number of running requests of each priority class
+     */
+    private final DispatchLimiter mDispatchLimiter = new DispatchLimiter();
+
+    /**
+     * Streaming requests that are sent or waiting for the rate limiter or a retry, guarded by itself
+     */
+    private final List<ForecastStreamRequest> mStreamRequests = new ArrayList<>();
+
+    /**
+     * Copies of failed weather requests waiting for their backoff delay, guarded by itself
+     */
+    private final List<WeatherRequest> mRetryingRequests = new ArrayList<>();
+
+    /**
+     * Sends the deferred requests that the rate limiter allows
+     */
+    private final Runnable mSendDeferredRequests = new Runnable() {
+        @Override
+        public void run() {
+            sendDeferredRequests();
+        }
+    };
+
 
     /**
      * @param context Context to use for some initializations
@@ -95,7 +230,15 @@ public final class NetworkUtils {
         // getApplicationContext() is key, it keeps your application safe from leaking the
         // Activity or BroadcastReceiver if you pass it instead of application context
         mContext = context.getApplicationContext();
-        mRequestQueue = getRequestQueue();
+
+        // Creating the RequestQueue initializes the disk cache directory and starts the dispatcher
+        // threads, keep that off the main thread and out of the app startup
+        AppExecutors.getInstance().diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                createRequestQueue();
+            }
+        });
     }
 
     /**
@@ -114,25 +257,292 @@ public final class NetworkUtils {
     }
 
     /**
-     * Get an instance of Volley RequestQueue
-     *
-     * @return an instance of Volley RequestQueue
+     * Create the Volley RequestQueue and send the requests added while it was being created
      */
-    private RequestQueue getRequestQueue() {
-        if (mRequestQueue == null) {
-            mRequestQueue = Volley.newRequestQueue(mContext);
+    private void createRequestQueue() {
+        RequestQueue requestQueue = Volley.newRequestQueue(mContext);
+        requestQueue.addRequestFinishedListener(new RequestQueue.RequestFinishedListener<Object>() {
+            @Override
+            public void onRequestFinished(Request<Object> request) {
+                // Start the requests that were waiting for a running request of the same class
+                for (Request<?> waitingRequest : mDispatchLimiter.onFinished(request)) {
+                    enqueue(waitingRequest);
+                }
+            }
+        });
+        synchronized (mQueueLock) {
+            mRequestQueue = requestQueue;
+            for (Request<?> request : mBufferedRequests) {
+                requestQueue.add(request);
+            }
+            mBufferedRequests.clear();
         }
-        return mRequestQueue;
     }
 
     /**
+     * Weather requests are checked against the circuit breaker and the rate limiter of their
+     * endpoint first, they may fail fast or be deferred
+     *
      * @param request volley request to add to RequestQueue
      * @param <T>     The passed-in request
      */
-    public <T> void addToRequestQueue(Request<T> request) {
-        getRequestQueue().add(request);
+    public <T> void addToRequestQueue(final Request<T> request) {
+        if (request instanceof WeatherRequest) {
+            ((WeatherRequest) request).markSubmitted();
+            CircuitBreaker circuitBreaker = ((WeatherRequest) request).getCircuitBreaker();
+            if (!circuitBreaker.allowRequest()) {
+                // The endpoint is failing, fail fast so that cached data is shown right away
+                final VolleyError error = circuitBreaker.createOpenCircuitError();
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!request.isCanceled()) {
+                            request.deliverError(error);
+                        }
+                    }
+                });
+                return;
+            }
+            if (!acquireOrDefer((WeatherRequest) request)) {
+                return;
+            }
+        }
+        start(request);
     }
 
+    /**
+     * Send a request that parses its response while it is downloaded. Like weather requests, it
+     * is checked against the circuit breaker and the rate limiter of the forecast endpoint first.
+     * The user is waiting on it, so it is only delayed until a token is available.
+     *
+     * @param request the streaming request to send
+     */
+    public void addToStreamQueue(final ForecastStreamRequest request) {
+        if (request.isCanceled()) {
+            return;
+        }
+        request.markSubmitted();
+        CircuitBreaker circuitBreaker = request.getCircuitBreaker();
+        if (!circuitBreaker.allowRequest()) {
+            // The endpoint is failing, fail fast so that cached data is shown right away
+            request.deliverError(circuitBreaker.createOpenCircuitError());
+            return;
+        }
+        synchronized (mStreamRequests) {
+            if (!mStreamRequests.contains(request)) {
+                mStreamRequests.add(request);
+            }
+        }
+        if (!mRateLimiter.tryAcquire(RequestKey.ENDPOINT_FORECAST, true)) {
+            // Give back the circuit trial, the request goes through the breaker again when retried
+            circuitBreaker.onIgnored();
+            mMainHandler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    addToStreamQueue(request);
+                }
+            }, mRateLimiter.getDelayMillis(RequestKey.ENDPOINT_FORECAST, true));
+            return;
+        }
+        // Streaming requests read the network on the shared network pool instead of Volley's dispatchers
+        AppExecutors.getInstance().networkIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                Tracer.beginSection("NetworkUtils.stream");
+                long retryDelay = request.perform();
+                Tracer.endSection();
+                if (retryDelay >= 0) {
+                    // Stays in the stream requests, so it can be cancelled during the backoff
+                    mMainHandler.postDelayed(new Runnable() {
+                        @Override
+                        public void run() {
+                            addToStreamQueue(request);
+                        }
+                    }, retryDelay);
+                    return;
+                }
+                synchronized (mStreamRequests) {
+                    mStreamRequests.remove(request);
+                }
+            }
+        });
+    }
+
+    /**
+     * Send a failed weather request again once the backoff delay has passed, no thread waits
+     * meanwhile. It goes through the circuit breaker and the rate limiter again.
+     *
+     * @param request     copy of the failed request
+     * @param delayMillis backoff delay
+     */
+    void retryLater(final WeatherRequest request, long delayMillis) {
+        synchronized (mRetryingRequests) {
+            mRetryingRequests.add(request);
+        }
+        mMainHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mRetryingRequests) {
+                    if (!mRetryingRequests.remove(request)) {
+                        // Cancelled during the backoff
+                        return;
+                    }
+                }
+                addToRequestQueue(request);
+            }
+        }, delayMillis);
+    }
+
+    /**
+     * Add a request to the RequestQueue if its priority class has room for it, otherwise it
+     * waits for a running request of the same class to finish
+     *
+     * @param request volley request to add to RequestQueue
+     */
+    private void start(Request<?> request) {
+        if (mDispatchLimiter.tryStart(request)) {
+            enqueue(request);
+        }
+    }
+
+    /**
+     * Take a rate limiter token for the request or defer it until one is available
+     *
+     * @param request request to send
+     * @return true if the request can be sent now, false if it is deferred
+     */
+    private boolean acquireOrDefer(WeatherRequest request) {
+        synchronized (mDeferredRequestsLock) {
+            Deque<WeatherRequest> deferredRequests = request.isInteractive()
+                    ? mDeferredInteractiveRequests : mDeferredBackgroundRequests;
+            // Don't let a new request overtake the deferred ones of its class
+            if (deferredRequests.isEmpty() && mRateLimiter.tryAcquire(request.getEndpoint(), request.isInteractive())) {
+                return true;
+            }
+            deferredRequests.add(request);
+            scheduleDeferredRequests();
+            return false;
+        }
+    }
+
+    /**
+     * Send the deferred requests that the rate limiter allows now, interactive ones first, and
+     * schedule the next attempt for the others
+     */
+    private void sendDeferredRequests() {
+        List<WeatherRequest> requestsToSend = new ArrayList<>();
+        synchronized (mDeferredRequestsLock) {
+            collectAllowedRequests(mDeferredInteractiveRequests, requestsToSend);
+            collectAllowedRequests(mDeferredBackgroundRequests, requestsToSend);
+            scheduleDeferredRequests();
+        }
+        for (WeatherRequest request : requestsToSend) {
+            start(request);
+        }
+    }
+
+    /**
+     * Move the deferred requests that get a rate limiter token to the list of requests to send
+     *
+     * @param deferredRequests deferred requests of one class
+     * @param requestsToSend   list of requests to send
+     */
+    private void collectAllowedRequests(Deque<WeatherRequest> deferredRequests, List<WeatherRequest> requestsToSend) {
+        Iterator<WeatherRequest> iterator = deferredRequests.iterator();
+        while (iterator.hasNext()) {
+            WeatherRequest request = iterator.next();
+            if (request.isCanceled()) {
+                iterator.remove();
+            } else if (mRateLimiter.tryAcquire(request.getEndpoint(), request.isInteractive())) {
+                iterator.remove();
+                requestsToSend.add(request);
+            }
+        }
+    }
+
+    /**
+     * Schedule sending the deferred requests when the first rate limiter token is available to
+     * one of them. Must be called holding mDeferredRequestsLock
+     */
+    private void scheduleDeferredRequests() {
+        long delay = Long.MAX_VALUE;
+        for (WeatherRequest request : mDeferredInteractiveRequests) {
+            delay = Math.min(delay, mRateLimiter.getDelayMillis(request.getEndpoint(), true));
+        }
+        for (WeatherRequest request : mDeferredBackgroundRequests) {
+            delay = Math.min(delay, mRateLimiter.getDelayMillis(request.getEndpoint(), false));
+        }
+        mMainHandler.removeCallbacks(mSendDeferredRequests);
+        if (delay != Long.MAX_VALUE) {
+            mMainHandler.postDelayed(mSendDeferredRequests, delay);
+        }
+    }
+
+    /**
+     * Add a request to the Volley RequestQueue, or buffer it until the RequestQueue is created
+     *
+     * @param request volley request to add to RequestQueue
+     */
+    private void enqueue(Request<?> request) {
+        RequestQueue requestQueue;
+        synchronized (mQueueLock) {
+            if (mRequestQueue == null) {
+                // Sent as soon as the RequestQueue is created
+                mBufferedRequests.add(request);
+                return;
+            }
+            requestQueue = mRequestQueue;
+        }
+        Tracer.beginSection("NetworkUtils.dispatch");
+        requestQueue.add(request);
+        Tracer.endSection();
+    }
+
+
+    /**
+     * @param endpoint one of the RequestKey endpoints
+     * @return the circuit breaker of the endpoint
+     */
+    CircuitBreaker getCircuitBreaker(int endpoint) {
+        return mCircuitBreakers[endpoint];
+    }
+
+    /**
+     * @return the retry budget shared by all requests
+     */
+    RetryBudget getRetryBudget() {
+        return mRetryBudget;
+    }
+
+    /**
+     * Volley's http cache lives on disk, but it keeps the headers of every cached response in the
+     * heap, so it is only cleared when the process is about to be killed. Its size is estimated
+     * from the number of cached responses, one file each in the cache directory.
+     *
+     * @return the http cache as a {@link TrimmableCache}
+     */
+    public TrimmableCache getHttpCache() {
+        final File cacheDir = new File(mContext.getCacheDir(), HTTP_CACHE_DIR);
+        return new TrimmableCache() {
+            @Override
+            public int getSize() {
+                String[] files = cacheDir.list();
+                return files == null ? 0 : files.length * HTTP_CACHE_HEADER_SIZE_BYTES;
+            }
+
+            @Override
+            public void trimToFraction(float fraction) {
+                RequestQueue requestQueue;
+                synchronized (mQueueLock) {
+                    requestQueue = mRequestQueue;
+                }
+                if (fraction == 0 && requestQueue != null) {
+                    // Clear the cache on the cache thread rather than on the calling thread
+                    requestQueue.add(new ClearCacheRequest(requestQueue.getCache(), null));
+                }
+            }
+        };
+    }
 
     /**
      * Cancel all requests of the given tag
@@ -140,48 +550,229 @@ public final class NetworkUtils {
      * @param tag the tag of the requests we want to cancel
      */
     public void cancelRequests(String tag) {
-        getRequestQueue().cancelAll(tag);
+        synchronized (mDeferredRequestsLock) {
+            // Deferred requests are dropped from their queues when they are sent
+            for (WeatherRequest request : mDeferredInteractiveRequests) {
+                if (tag.equals(request.getTag())) request.cancel();
+            }
+            for (WeatherRequest request : mDeferredBackgroundRequests) {
+                if (tag.equals(request.getTag())) request.cancel();
+            }
+        }
+        mDispatchLimiter.cancelAll(tag);
+        synchronized (mRetryingRequests) {
+            Iterator<WeatherRequest> iterator = mRetryingRequests.iterator();
+            while (iterator.hasNext()) {
+                WeatherRequest request = iterator.next();
+                if (tag.equals(request.getTag())) {
+                    request.cancel();
+                    iterator.remove();
+                }
+            }
+        }
+        synchronized (mStreamRequests) {
+            Iterator<ForecastStreamRequest> iterator = mStreamRequests.iterator();
+            while (iterator.hasNext()) {
+                ForecastStreamRequest request = iterator.next();
+                if (tag.equals(request.getTag())) {
+                    request.cancel();
+                    iterator.remove();
+                }
+            }
+        }
+        RequestQueue requestQueue;
+        synchronized (mQueueLock) {
+            if (mRequestQueue == null) {
+                // Drop the buffered requests of the tag, they were never sent
+                Iterator<Request<?>> iterator = mBufferedRequests.iterator();
+                while (iterator.hasNext()) {
+                    Request<?> request = iterator.next();
+                    if (tag.equals(request.getTag())) {
+                        request.cancel();
+                        iterator.remove();
+                    }
+                }
+                return;
+            }
+            requestQueue = mRequestQueue;
+        }
+        requestQueue.cancelAll(tag);
     }
 
     /**
      * @return the url for the weather endpoint
      */
-    public static URL getWeatherUrl(Context context) {
-        return buildUrl(context, WEATHER_ENDPOINT);
+    public static String getWeatherUrl(Context context) {
+        long start = LatencyMetrics.now();
+        String url = getPreferredLocationUrls(context).weatherUrl;
+        LatencyMetrics.getInstance().record(RequestKey.ENDPOINT_WEATHER, LatencyMetrics.STAGE_URL_BUILD, start);
+        return url;
     }
 
     /**
      * @return The url for the forecasts endpoint
      */
-    public static URL getForecastUrl(Context context) {
-        return buildUrl(context, FORECAST_ENDPOINT);
+    public static String getForecastUrl(Context context) {
+        long start = LatencyMetrics.now();
+        String url = getPreferredLocationUrls(context).forecastUrl;
+        LatencyMetrics.getInstance().record(RequestKey.ENDPOINT_FORECAST, LatencyMetrics.STAGE_URL_BUILD, start);
+        return url;
+    }
+
+    /**
+     * @return the url for the forecasts endpoint limited to the slots of the hours forecasts list
+     */
+    public static String getHoursForecastUrl(Context context) {
+        long start = LatencyMetrics.now();
+        String url = getPreferredLocationUrls(context).hoursForecastUrl;
+        LatencyMetrics.getInstance().record(RequestKey.ENDPOINT_FORECAST, LatencyMetrics.STAGE_URL_BUILD, start);
+        return url;
+    }
+
+    /**
+     * @return the url for the weather endpoint of the given saved location
+     */
+    public static String getWeatherUrl(Context context, City city) {
+        long start = LatencyMetrics.now();
+        boolean hasCoordinates = city.getLat() != 0 || city.getLon() != 0;
+        StringBuilder builder = new StringBuilder(URL_CAPACITY).append(BASE_URL).append(WEATHER_ENDPOINT).append('?');
+        appendLocation(builder, city.getId(), hasCoordinates ? new double[]{city.getLat(), city.getLon()} : null, city.getName());
+        String url = builder.append(getCommonParameters(context)).toString();
+        LatencyMetrics.getInstance().record(RequestKey.ENDPOINT_WEATHER, LatencyMetrics.STAGE_URL_BUILD, start);
+        return url;
+    }
+
+    /**
+     * Builds the URL to get the current weather of several cities in one call
+     *
+     * @param context context object to use for reading string resources
+     * @param cities  cities with a known id, {@link #MAX_GROUP_SIZE} at most
+     * @return the url for the group endpoint
+     */
+    public static String getGroupWeatherUrl(Context context, List<City> cities) {
+        long start = LatencyMetrics.now();
+        StringBuilder builder = new StringBuilder(URL_CAPACITY).append(BASE_URL).append(GROUP_ENDPOINT).append('?')
+                .append(ID_PARAM).append('=');
+        for (int i = 0; i < cities.size(); i++) {
+            if (i > 0) {
+                // Encoded comma
+                builder.append("%2C");
+            }
+            builder.append(cities.get(i).getId());
+        }
+        String url = builder.append(getCommonParameters(context)).toString();
+        LatencyMetrics.getInstance().record(RequestKey.ENDPOINT_GROUP, LatencyMetrics.STAGE_URL_BUILD, start);
+        return url;
+    }
+
+    /**
+     * Returns the urls of the preferred location, they are built again only when the location
+     * preferences change
+     *
+     * @param context context object to use for reading preferences & string resources
+     * @return the urls of the preferred location
+     */
+    private static PreferredLocationUrls getPreferredLocationUrls(Context context) {
+        PreferencesSnapshot preferences = SharedPreferencesHelper.getSnapshot(context);
+        PreferredLocationUrls urls = sPreferredLocationUrls;
+        if (urls != null && urls.preferences == preferences) {
+            return urls;
+        }
+        if (urls != null && urls.isLocationOf(preferences)) {
+            // Another preference has changed, keep the urls for the new snapshot
+            urls = new PreferredLocationUrls(preferences, urls.weatherUrl, urls.forecastUrl);
+        } else {
+            urls = new PreferredLocationUrls(preferences,
+                    buildUrl(context, WEATHER_ENDPOINT, preferences),
+                    buildUrl(context, FORECAST_ENDPOINT, preferences));
+        }
+        sPreferredLocationUrls = urls;
+        return urls;
     }
 
     /**
      * Builds the URL to get the weather data using a location. This location is based
-     * on the query capabilities of the weather provider that we are using.
+     * on the query capabilities of the weather provider that we are using: the city id when
+     * the location was picked from the city index, its coordinates when only those are known
+     * or the location text typed by the user otherwise.
      *
-     * @param context  context object to use for reading string resources
-     * @param endPoint the end point to get data from
+     * @param context     context object to use for reading string resources
+     * @param endPoint    the end point to get data from
+     * @param preferences preferences snapshot holding the location
      * @return The URL to use to query the weather server.
      */
-    private static URL buildUrl(Context context, String endPoint) {
-        Uri.Builder uriBuilder = Uri.parse(BASE_URL + endPoint).buildUpon();
-        Uri uri = uriBuilder
-                .appendQueryParameter(QUERY_PARAM, SharedPreferencesHelper.getPreferredWeatherLocation(context))
-                .appendQueryParameter(UNITS_PARAM, SharedPreferencesHelper.getPreferredMeasurementSystem(context))
-                .appendQueryParameter(LANG_PARAM, Locale.getDefault().getLanguage())
-                .appendQueryParameter(FORMAT_PARAM, FORMAT)
-                .appendQueryParameter(APP_ID_PARAM, context.getString(R.string.api_key))
-                .build();
-        try {
-            URL url = new URL(uri.toString());
-            Log.v(TAG, "URL: " + url);
-            return url;
-        } catch (MalformedURLException e) {
-            e.printStackTrace();
-            return null;
+    private static String buildUrl(Context context, String endPoint, PreferencesSnapshot preferences) {
+        StringBuilder builder = new StringBuilder(URL_CAPACITY).append(BASE_URL).append(endPoint).append('?');
+        appendLocation(builder, preferences.getLocationId(), preferences.getLocationCoordinates(), preferences.getLocation());
+        String url = builder.append(getCommonParameters(context)).toString();
+        Log.v(TAG, "URL: " + url);
+        return url;
+    }
+
+    /**
+     * Append the location query parameters: the city id if known, the coordinates if known or
+     * the location text otherwise
+     *
+     * @param builder     url builder
+     * @param id          OpenWeatherMap city id, 0 if unknown
+     * @param coordinates latitude & longitude, null if unknown
+     * @param query       location text
+     */
+    private static void appendLocation(StringBuilder builder, long id, double[] coordinates, String query) {
+        if (id > 0) {
+            builder.append(ID_PARAM).append('=').append(id);
+        } else if (coordinates != null) {
+            builder.append(LAT_PARAM).append('=').append(coordinates[0])
+                    .append('&').append(LON_PARAM).append('=').append(coordinates[1]);
+        } else {
+            builder.append(QUERY_PARAM).append('=').append(Uri.encode(query));
         }
     }
 
+    /**
+     * The parameters shared by all endpoints never change, so they are built once
+     *
+     * @param context context object to use for reading string resources
+     * @return the query parameters shared by all endpoints, starting with '&'
+     */
+    private static String getCommonParameters(Context context) {
+        String commonParameters = sCommonParameters;
+        if (commonParameters == null) {
+            commonParameters = "&" + UNITS_PARAM + "=" + CANONICAL_UNITS
+                    + "&" + FORMAT_PARAM + "=" + FORMAT
+                    + "&" + APP_ID_PARAM + "=" + Uri.encode(context.getString(R.string.api_key));
+            sCommonParameters = commonParameters;
+        }
+        return commonParameters;
+    }
+
+    /**
+     * Urls of the preferred location with the preferences snapshot they were built from
+     */
+    private static final class PreferredLocationUrls {
+
+        final PreferencesSnapshot preferences;
+        final String weatherUrl;
+        final String forecastUrl;
+        final String hoursForecastUrl;
+
+        PreferredLocationUrls(PreferencesSnapshot preferences, String weatherUrl, String forecastUrl) {
+            this.preferences = preferences;
+            this.weatherUrl = weatherUrl;
+            this.forecastUrl = forecastUrl;
+            this.hoursForecastUrl = forecastUrl + "&" + COUNT_PARAM + "=" + OpenWeatherDataParser.HOURS_FORECASTS_COUNT;
+        }
+
+        /**
+         * @param other another preferences snapshot
+         * @return true if the other snapshot has the same location as the one the urls were built from
+         */
+        boolean isLocationOf(PreferencesSnapshot other) {
+            return preferences.getLocationId() == other.getLocationId()
+                    && Arrays.equals(preferences.getLocationCoordinates(), other.getLocationCoordinates())
+                    && preferences.getLocation().equals(other.getLocation());
+        }
+
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,95 @@
+package com.barmej.weatherforecasts.network;
+
+import android.os.SystemClock;
+
+/**
+ * Client side rate limiter that shapes the traffic of this device to the OpenWeatherMap API.
+ * <p>
+ * Each endpoint has its own token bucket: a request takes a token, tokens are added back at a
+ * steady rate up to the bucket capacity. Background requests can't take the last
+ * {@link #INTERACTIVE_RESERVE} tokens of a bucket, these are kept for requests the user is
+ * waiting on.
+ */
+class RateLimiter {
+
+    /**
+     * Tokens of each bucket that only interactive requests can take
+     */
+    private static final int INTERACTIVE_RESERVE = 1;
+
+    /**
+     * A token bucket for one endpoint
+     */
+    private static final class TokenBucket {
+
+        final int capacity;
+        final long refillIntervalMillis;
+        double tokens;
+        long lastRefillTime;
+
+        /**
+         * @param capacity        maximum number of tokens, the allowed burst
+         * @param requestsPerMinute steady rate of the bucket
+         */
+        TokenBucket(int capacity, int requestsPerMinute) {
+            this.capacity = capacity;
+            this.refillIntervalMillis = 60 * 1000 / requestsPerMinute;
+            this.tokens = capacity;
+            this.lastRefillTime = SystemClock.elapsedRealtime();
+        }
+
+        /**
+         * Add the tokens earned since the last refill
+         */
+        void refill() {
+            long now = SystemClock.elapsedRealtime();
+            tokens = Math.min(capacity, tokens + (double) (now - lastRefillTime) / refillIntervalMillis);
+            lastRefillTime = now;
+        }
+
+    }
+
+    /**
+     * Buckets of the endpoints, indexed by the RequestKey endpoints
+     */
+    private final TokenBucket[] mBuckets = {
+            // Weather: the header of the main screen & saved locations without an id
+            new TokenBucket(6, 12),
+            // Forecasts: only the main screen
+            new TokenBucket(4, 6),
+            // Group: up to 20 saved locations per call
+            new TokenBucket(3, 6)
+    };
+
+    /**
+     * Take a token of the endpoint bucket if one is available to the request
+     *
+     * @param endpoint    one of the RequestKey endpoints
+     * @param interactive whether the user is waiting on the request
+     * @return true if the request can be sent now
+     */
+    synchronized boolean tryAcquire(int endpoint, boolean interactive) {
+        TokenBucket bucket = mBuckets[endpoint];
+        bucket.refill();
+        double needed = interactive ? 1 : 1 + INTERACTIVE_RESERVE;
+        if (bucket.tokens < needed) {
+            return false;
+        }
+        bucket.tokens--;
+        return true;
+    }
+
+    /**
+     * @param endpoint    one of the RequestKey endpoints
+     * @param interactive whether the user is waiting on the request
+     * @return time until a token is available to the request, in milliseconds
+     */
+    synchronized long getDelayMillis(int endpoint, boolean interactive) {
+        TokenBucket bucket = mBuckets[endpoint];
+        bucket.refill();
+        double needed = interactive ? 1 : 1 + INTERACTIVE_RESERVE;
+        double missing = needed - bucket.tokens;
+        return missing <= 0 ? 0 : (long) Math.ceil(missing * bucket.refillIntervalMillis);
+    }
+
+}
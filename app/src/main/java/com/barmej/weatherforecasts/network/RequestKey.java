@@ -0,0 +1,79 @@
+package com.barmej.weatherforecasts.network;
+
+import com.barmej.weatherforecasts.entity.City;
+
+/**
+ * Identifies a request by its endpoint and its location the same way the request url does: by
+ * city id, by coordinates or by the location text, which is matched regardless of case.
+ * <p>
+ * Keys are compared field by field, so they can be created for every lookup without building
+ * a string out of the url. The location text is normalized once, when the name of the City is set.
+ */
+public final class RequestKey {
+
+    /*
+     * Endpoints of the requests
+     */
+    public static final int ENDPOINT_WEATHER = 0;
+    public static final int ENDPOINT_FORECAST = 1;
+    public static final int ENDPOINT_GROUP = 2;
+
+    /**
+     * Coordinates are compared with a precision of 4 decimals, about 10 meters
+     */
+    private static final double COORDINATES_SCALE = 10000;
+
+    private final int endpoint;
+    private final long cityId;
+    private final int lat;
+    private final int lon;
+    private final String query;
+
+    private RequestKey(int endpoint, long cityId, int lat, int lon, String query) {
+        this.endpoint = endpoint;
+        this.cityId = cityId;
+        this.lat = lat;
+        this.lon = lon;
+        this.query = query;
+    }
+
+    /**
+     * @param endpoint one of {@link #ENDPOINT_WEATHER} or {@link #ENDPOINT_FORECAST}
+     * @param city     the location of the request
+     * @return the key of the request
+     */
+    public static RequestKey of(int endpoint, City city) {
+        if (city.getId() > 0) {
+            return new RequestKey(endpoint, city.getId(), 0, 0, null);
+        } else if (city.getLat() != 0 || city.getLon() != 0) {
+            return new RequestKey(endpoint, 0,
+                    (int) Math.round(city.getLat() * COORDINATES_SCALE),
+                    (int) Math.round(city.getLon() * COORDINATES_SCALE), null);
+        } else {
+            return new RequestKey(endpoint, 0, 0, 0, city.getNormalizedName());
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RequestKey)) return false;
+        RequestKey key = (RequestKey) o;
+        return endpoint == key.endpoint
+                && cityId == key.cityId
+                && lat == key.lat
+                && lon == key.lon
+                && (query == null ? key.query == null : query.equals(key.query));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = endpoint;
+        result = 31 * result + (int) (cityId ^ (cityId >>> 32));
+        result = 31 * result + lat;
+        result = 31 * result + lon;
+        result = 31 * result + (query != null ? query.hashCode() : 0);
+        return result;
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.barmej.weatherforecasts.network;
+
+/**
+ * Limits retries to a fraction of the successful traffic, so that an upstream incident doesn't
+ * turn every request into several.
+ * <p>
+ * Every successful request deposits {@link #DEPOSIT_PER_SUCCESS} of a token and every retry
+ * withdraws a whole token, the balance is capped at {@link #MAX_TOKENS}.
+ */
+public class RetryBudget {
+
+    private static final float MAX_TOKENS = 10;
+    private static final float DEPOSIT_PER_SUCCESS = 0.2f;
+
+    private float mTokens = MAX_TOKENS;
+
+    /**
+     * Record a successful request
+     */
+    public synchronized void onSuccess() {
+        mTokens = Math.min(MAX_TOKENS, mTokens + DEPOSIT_PER_SUCCESS);
+    }
+
+    /**
+     * @return true if a retry is allowed, in which case a token is withdrawn
+     */
+    public synchronized boolean tryWithdraw() {
+        if (mTokens < 1) {
+            return false;
+        }
+        mTokens--;
+        return true;
+    }
+
+}
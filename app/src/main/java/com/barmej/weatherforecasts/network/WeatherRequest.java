@@ -0,0 +1,283 @@
+package com.barmej.weatherforecasts.network;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.HttpHeaderParser;
+import com.android.volley.toolbox.JsonObjectRequest;
+import com.barmej.weatherforecasts.metrics.LatencyMetrics;
+import com.barmej.weatherforecasts.utils.Fingerprint;
+
+import org.json.JSONObject;
+
+/**
+ * A GET request to an OpenWeatherMap endpoint. It retries with {@link BackoffRetryPolicy}, a copy
+ * of the request is sent again after the backoff delay, and reports its outcome to the circuit
+ * breaker of its endpoint, see {@link NetworkUtils#addToRequestQueue(com.android.volley.Request)}.
+ */
+public class WeatherRequest extends JsonObjectRequest {
+
+    /**
+     * Delivered instead of the parsed body when the body is unchanged, see {@link #setSkipUnchanged(long)}
+     */
+    private static final JSONObject UNCHANGED_RESPONSE = new JSONObject();
+
+    /**
+     * Interface used to receive the response with the fingerprint of its body
+     */
+    public interface Listener {
+
+        /**
+         * @param response    the parsed body, see {@link #isUnchanged(JSONObject)}
+         * @param fingerprint fingerprint of the body, to be cached with the data parsed from it
+         */
+        void onResponse(JSONObject response, long fingerprint);
+
+    }
+
+    /*
+     * Markers added by Volley's network dispatcher when it takes the request from its queue and
+     * once the http exchange is complete
+     */
+    private static final String MARKER_NETWORK_QUEUE_TAKE = "network-queue-take";
+    private static final String MARKER_NETWORK_HTTP_COMPLETE = "network-http-complete";
+
+    private final NetworkUtils mNetworkUtils;
+
+    private final CircuitBreaker mCircuitBreaker;
+
+    private final RetryBudget mRetryBudget;
+
+    /**
+     * Retries of the request, shared with the copies sending it again
+     */
+    private final BackoffRetryPolicy mRetryPolicy;
+
+    /*
+     * Listeners of the request, handed to the copies sending it again. Only one of the response
+     * listeners is set
+     */
+    private final Response.Listener<JSONObject> mResponseListener;
+    private final Listener mListener;
+    private final Response.ErrorListener mErrorListener;
+
+    /**
+     * Fingerprint of the body the cached data was parsed from, 0 when nothing can be skipped
+     */
+    private long mUnchangedFingerprint;
+
+    /**
+     * Fingerprint of the received body, set before the response is delivered
+     */
+    private volatile long mResponseFingerprint;
+
+    /**
+     * Whether the user is waiting on this request, as opposed to background traffic
+     */
+    private boolean mInteractive = true;
+
+    private final int mEndpoint;
+
+    private Priority mPriority = Priority.NORMAL;
+
+    /*
+     * Times the request was handed to NetworkUtils and sent by a dispatcher, for the latency metrics
+     */
+    private volatile long mSubmittedNanos;
+    private volatile long mSentNanos;
+
+    /**
+     * @param networkUtils  NetworkUtils instance holding the circuit breakers & the retry budget
+     * @param endpoint      endpoint of the request, one of the RequestKey endpoints
+     * @param url           url of the request
+     * @param listener      listener to receive the response
+     * @param errorListener listener to receive the error
+     */
+    public WeatherRequest(NetworkUtils networkUtils, int endpoint, String url,
+                          Response.Listener<JSONObject> listener, Response.ErrorListener errorListener) {
+        this(networkUtils, endpoint, url, listener, null, errorListener,
+                new BackoffRetryPolicy(networkUtils.getRetryBudget()));
+    }
+
+    /**
+     * @param networkUtils  NetworkUtils instance holding the circuit breakers & the retry budget
+     * @param endpoint      endpoint of the request, one of the RequestKey endpoints
+     * @param url           url of the request
+     * @param listener      listener to receive the response with the fingerprint of its body
+     * @param errorListener listener to receive the error
+     */
+    public WeatherRequest(NetworkUtils networkUtils, int endpoint, String url,
+                          Listener listener, Response.ErrorListener errorListener) {
+        this(networkUtils, endpoint, url, null, listener, errorListener,
+                new BackoffRetryPolicy(networkUtils.getRetryBudget()));
+    }
+
+    private WeatherRequest(NetworkUtils networkUtils, int endpoint, String url, Response.Listener<JSONObject> listener,
+                           Listener fingerprintListener, Response.ErrorListener errorListener,
+                           BackoffRetryPolicy retryPolicy) {
+        super(Method.GET, url, null, listener, errorListener);
+        mNetworkUtils = networkUtils;
+        mEndpoint = endpoint;
+        mResponseListener = listener;
+        mListener = fingerprintListener;
+        mErrorListener = errorListener;
+        mCircuitBreaker = networkUtils.getCircuitBreaker(endpoint);
+        mRetryBudget = networkUtils.getRetryBudget();
+        mRetryPolicy = retryPolicy;
+        setRetryPolicy(retryPolicy);
+    }
+
+    /**
+     * @return a copy of this failed request to send it again, Volley requests can't be sent twice
+     */
+    private WeatherRequest copyForRetry() {
+        WeatherRequest request = new WeatherRequest(mNetworkUtils, mEndpoint, getUrl(), mResponseListener,
+                mListener, mErrorListener, mRetryPolicy);
+        request.mInteractive = mInteractive;
+        request.mPriority = mPriority;
+        request.mUnchangedFingerprint = mUnchangedFingerprint;
+        request.setTag(getTag());
+        return request;
+    }
+
+    /**
+     * @return endpoint of the request, one of the RequestKey endpoints
+     */
+    int getEndpoint() {
+        return mEndpoint;
+    }
+
+    /**
+     * @return true if the user is waiting on this request
+     */
+    public boolean isInteractive() {
+        return mInteractive;
+    }
+
+    /**
+     * Requests are interactive by default, background requests are deferred first when the
+     * rate limit is reached
+     *
+     * @param interactive whether the user is waiting on this request
+     */
+    public void setInteractive(boolean interactive) {
+        mInteractive = interactive;
+    }
+
+    /**
+     * Set the priority class of the request: {@link Priority#IMMEDIATE} for the data the user
+     * looks at first, {@link Priority#NORMAL} by default, {@link Priority#LOW} for bulk and
+     * prefetch traffic
+     *
+     * @param priority priority of the request
+     */
+    public void setPriority(Priority priority) {
+        mPriority = priority;
+    }
+
+    @Override
+    public Priority getPriority() {
+        return mPriority;
+    }
+
+    /**
+     * Skip parsing a body identical to the body the cached data was parsed from, the listener
+     * then receives a response for which {@link #isUnchanged(JSONObject)} returns true
+     *
+     * @param cachedFingerprint fingerprint cached with the data, see
+     *                          {@link com.barmej.weatherforecasts.cache.WeatherDataCache#getResponseFingerprint}
+     */
+    public void setSkipUnchanged(long cachedFingerprint) {
+        mUnchangedFingerprint = cachedFingerprint;
+    }
+
+    /**
+     * @param response response received by the listener
+     * @return true if the body is the same as the last one, and wasn't parsed
+     */
+    public static boolean isUnchanged(JSONObject response) {
+        return response == UNCHANGED_RESPONSE;
+    }
+
+    /**
+     * @return the circuit breaker of the request endpoint
+     */
+    CircuitBreaker getCircuitBreaker() {
+        return mCircuitBreaker;
+    }
+
+    /**
+     * Start timing the queue wait, called when the request is handed to NetworkUtils
+     */
+    void markSubmitted() {
+        mSubmittedNanos = LatencyMetrics.now();
+    }
+
+    @Override
+    public void addMarker(String tag) {
+        super.addMarker(tag);
+        // Volley doesn't expose its timings, its markers are the only hooks into the dispatchers
+        if (MARKER_NETWORK_QUEUE_TAKE.equals(tag)) {
+            mSentNanos = LatencyMetrics.now();
+            if (mSubmittedNanos != 0) {
+                LatencyMetrics.getInstance().record(mEndpoint, LatencyMetrics.STAGE_QUEUE_WAIT, mSubmittedNanos);
+            }
+        } else if (MARKER_NETWORK_HTTP_COMPLETE.equals(tag) && mSentNanos != 0) {
+            LatencyMetrics.getInstance().record(mEndpoint, LatencyMetrics.STAGE_NETWORK, mSentNanos);
+        }
+    }
+
+    @Override
+    protected Response<JSONObject> parseNetworkResponse(NetworkResponse response) {
+        if (isCanceled()) {
+            // Superseded while the body was downloading, it won't be delivered
+            return Response.error(new VolleyError("Request canceled"));
+        }
+        long fingerprint = Fingerprint.of(response.data);
+        mResponseFingerprint = fingerprint;
+        if (mUnchangedFingerprint != 0 && mUnchangedFingerprint == fingerprint) {
+            return Response.success(UNCHANGED_RESPONSE, HttpHeaderParser.parseCacheHeaders(response));
+        }
+        return super.parseNetworkResponse(response);
+    }
+
+    @Override
+    protected void deliverResponse(JSONObject response) {
+        mCircuitBreaker.onSuccess();
+        mRetryBudget.onSuccess();
+        if (mListener != null) {
+            mListener.onResponse(response, mResponseFingerprint);
+        } else {
+            super.deliverResponse(response);
+        }
+    }
+
+    @Override
+    public void deliverError(VolleyError error) {
+        // Requests rejected by an open circuit were never sent, they tell nothing about the server
+        if (!(error instanceof CircuitBreaker.OpenCircuitError)) {
+            long retryDelay = mRetryPolicy.getRetryDelayMillis(error);
+            if (retryDelay >= 0) {
+                // Only the last attempt reports to the circuit breaker, the retry goes through it again
+                mCircuitBreaker.onIgnored();
+                mNetworkUtils.retryLater(copyForRetry(), retryDelay);
+                return;
+            }
+            if (BackoffRetryPolicy.isRetryable(error) || isThrottled(error)) {
+                mCircuitBreaker.onFailure();
+            } else {
+                mCircuitBreaker.onIgnored();
+            }
+        }
+        super.deliverError(error);
+    }
+
+    /**
+     * @param error the request error
+     * @return true if the server rejected the request because of the API key quota
+     */
+    static boolean isThrottled(VolleyError error) {
+        return error.networkResponse != null && error.networkResponse.statusCode == 429;
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.barmej.weatherforecasts.utils;
+
+import com.barmej.weatherforecasts.entity.Forecast;
+import com.barmej.weatherforecasts.entity.ForecastLists;
+import com.barmej.weatherforecasts.entity.Weather;
+import com.barmej.weatherforecasts.entity.WeatherInfo;
+
+import java.util.List;
+
+/**
+ * This utility computes 64-bit FNV-1a fingerprints of response bodies and of the parsed data,
+ * so that unchanged data can be detected without comparing it field by field.
+ * <p>
+ * The fingerprints of the parsed data only cover the fields that are shown, two objects with
+ * the same fingerprint render the same.
+ */
+public final class Fingerprint {
+
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private long mHash = OFFSET_BASIS;
+
+    private Fingerprint() {
+    }
+
+    /**
+     * @param data response body
+     * @return fingerprint of the bytes
+     */
+    public static long of(byte[] data) {
+        long hash = OFFSET_BASIS;
+        for (byte b : data) {
+            hash = (hash ^ (b & 0xff)) * PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * @param weatherInfo current weather info
+     * @return fingerprint of the shown fields
+     */
+    public static long of(WeatherInfo weatherInfo) {
+        Fingerprint fingerprint = new Fingerprint();
+        fingerprint.add(weatherInfo.getName());
+        // The time of the observation, shown as the date of the header
+        fingerprint.add(weatherInfo.getDt());
+        fingerprint.add(weatherInfo.getMain().getTemp());
+        fingerprint.add(weatherInfo.getMain().getTempMin());
+        fingerprint.add(weatherInfo.getMain().getTempMax());
+        fingerprint.add(weatherInfo.getMain().getHumidity());
+        fingerprint.add(weatherInfo.getMain().getPressure());
+        fingerprint.add(weatherInfo.getWind().getSpeed());
+        fingerprint.add(weatherInfo.getWind().getDeg());
+        fingerprint.add(weatherInfo.getSys().getSunrise());
+        fingerprint.add(weatherInfo.getSys().getSunset());
+        fingerprint.add(weatherInfo.getWeather());
+        return fingerprint.mHash;
+    }
+
+    /**
+     * @param forecast a forecast slot
+     * @return fingerprint of the shown fields
+     */
+    public static long of(Forecast forecast) {
+        Fingerprint fingerprint = new Fingerprint();
+        fingerprint.add(forecast);
+        return fingerprint.mHash;
+    }
+
+    /**
+     * @param forecastLists hours & days forecasts
+     * @return fingerprint of the shown fields of all the slots, in list order
+     */
+    public static long of(ForecastLists forecastLists) {
+        Fingerprint fingerprint = new Fingerprint();
+        for (Forecast forecast : forecastLists.getHoursForecasts()) {
+            fingerprint.add(forecast);
+        }
+        for (List<Forecast> dayForecasts : forecastLists.getDaysForecasts()) {
+            // Separates the days, so that moving a slot to another day changes the fingerprint
+            fingerprint.add(dayForecasts.size());
+            for (Forecast forecast : dayForecasts) {
+                fingerprint.add(forecast);
+            }
+        }
+        return fingerprint.mHash;
+    }
+
+    private void add(Forecast forecast) {
+        add(forecast.getDt());
+        add(forecast.getMain().getTemp());
+        add(forecast.getMain().getTempMin());
+        add(forecast.getMain().getTempMax());
+        add(forecast.getMain().getHumidity());
+        add(forecast.getMain().getPressure());
+        add(forecast.getWind().getSpeed());
+        add(forecast.getWind().getDeg());
+        add(forecast.getWeather());
+    }
+
+    private void add(List<Weather> weatherList) {
+        for (Weather weather : weatherList) {
+            add(weather.getId());
+            add(weather.getIcon());
+            add(weather.getDescription());
+        }
+    }
+
+    private void add(long value) {
+        for (int i = 0; i < 8; i++) {
+            mHash = (mHash ^ (value & 0xff)) * PRIME;
+            value >>>= 8;
+        }
+    }
+
+    private void add(double value) {
+        add(Double.doubleToLongBits(value));
+    }
+
+    private void add(String value) {
+        if (value == null) {
+            add(-1L);
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            mHash = (mHash ^ (c & 0xff)) * PRIME;
+            mHash = (mHash ^ (c >>> 8)) * PRIME;
+        }
+        // Separates the strings, so that "ab" + "c" differs from "a" + "bc"
+        add(value.length());
+    }
+
+}
@@ -1,5 +1,6 @@
 package com.barmej.weatherforecasts.utils;
 
+import android.util.JsonReader;
 import android.util.Log;
 
 import com.barmej.weatherforecasts.entity.Forecast;
@@ -9,11 +10,13 @@ import com.barmej.weatherforecasts.entity.Sys;
 import com.barmej.weatherforecasts.entity.Weather;
 import com.barmej.weatherforecasts.entity.WeatherInfo;
 import com.barmej.weatherforecasts.entity.Wind;
+import com.barmej.weatherforecasts.metrics.Tracer;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -22,6 +25,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * This utility contains methods to handle OpenWeatherMap JSON data.
@@ -30,6 +34,11 @@ public class OpenWeatherDataParser {
 
     private static final String TAG = OpenWeatherDataParser.class.getSimpleName();
 
+    /**
+     * Number of forecast slots in the next 24hrs forecasts list, one slot every 3 hours
+     */
+    public static final int HOURS_FORECASTS_COUNT = 8;
+
     /**
      * Operation status code
      */
@@ -39,6 +48,7 @@ public class OpenWeatherDataParser {
      * Location information
      */
     private static final String OWM_CITY = "city";
+    private static final String OWM_CITY_ID = "id";
     private static final String OWM_CITY_NAME = "name";
 
     /**
@@ -74,6 +84,7 @@ public class OpenWeatherDataParser {
      * Weather condition information
      */
     private static final String OWM_WEATHER = "weather";
+    private static final String OWM_WEATHER_ID = "id";
     private static final String OWM_WEATHER_DESCRIPTION = "description";
     private static final String OWM_WEATHER_ICON = "icon";
 
@@ -119,10 +130,50 @@ public class OpenWeatherDataParser {
      */
     public static WeatherInfo getWeatherInfoObjectFromJson(JSONObject weatherJson) throws JSONException {
 
-        // Check if there is an error in the json
-        if (isError(weatherJson)) {
-            return null;
+        Tracer.beginSection("Parser.weather");
+        try {
+            // Check if there is an error in the json
+            if (isError(weatherJson)) {
+                return null;
+            }
+
+            return parseWeatherInfo(weatherJson);
+        } finally {
+            Tracer.endSection();
+        }
+    }
+
+    /**
+     * @param groupJson response json we got from OpenWeatherMap group endpoint
+     * @return list of WeatherInfo objects, one for each city in the response
+     * @throws JSONException exception that occurs if there is an error happened while parsing JSON
+     */
+    public static List<WeatherInfo> getWeatherInfoListFromGroupJson(JSONObject groupJson) throws JSONException {
+
+        Tracer.beginSection("Parser.group");
+        try {
+            // Check if there is an error in the json
+            if (groupJson.has(OWM_MESSAGE_CODE) && isError(groupJson)) {
+                return null;
+            }
+
+            JSONArray jsonWeatherArray = groupJson.getJSONArray(OWM_LIST);
+            List<WeatherInfo> weatherInfoList = new ArrayList<>(jsonWeatherArray.length());
+            for (int i = 0; i < jsonWeatherArray.length(); i++) {
+                weatherInfoList.add(parseWeatherInfo(jsonWeatherArray.getJSONObject(i)));
+            }
+            return weatherInfoList;
+        } finally {
+            Tracer.endSection();
         }
+    }
+
+    /**
+     * @param weatherJson json object of the current weather of one city
+     * @return WeatherInfo object that carries all the weather information extracted from JSON object
+     * @throws JSONException exception that occurs if there is an error happened while parsing JSON
+     */
+    private static WeatherInfo parseWeatherInfo(JSONObject weatherJson) throws JSONException {
 
         // Weather description is in a child array called "weather", which is 1 element long.
         JSONObject weatherObject = weatherJson.getJSONArray(OWM_WEATHER).getJSONObject(0);
@@ -138,6 +189,7 @@ public class OpenWeatherDataParser {
 
         // Get data from Json and assign it to Java object
         WeatherInfo weatherInfo = new WeatherInfo();
+        weatherInfo.setId(weatherJson.optLong(OWM_CITY_ID));
         weatherInfo.setDt(weatherJson.getLong(OWM_DATE));
         Main main = new Main();
         main.setTemp(mainObject.getDouble(OWM_TEMPERATURE));
@@ -151,6 +203,7 @@ public class OpenWeatherDataParser {
         wind.setDeg(windObject.has(OWM_WIND_DIRECTION) ? windObject.getLong(OWM_WIND_DIRECTION) : Integer.MAX_VALUE);
         weatherInfo.setWind(wind);
         Weather weather = new Weather();
+        weather.setId(weatherObject.getLong(OWM_WEATHER_ID));
         weather.setDescription(weatherObject.getString(OWM_WEATHER_DESCRIPTION));
         weather.setIcon(weatherObject.getString(OWM_WEATHER_ICON));
         List<Weather> weatherList = new ArrayList<>();
@@ -180,78 +233,336 @@ public class OpenWeatherDataParser {
             return null;
         }
 
-        JSONArray jsonForecastsArray = forecastsJson.getJSONArray(OWM_LIST);
-
-        List<Forecast> hoursForecasts = new ArrayList<>();
-        LinkedHashMap<String, List<Forecast>> daysForecasts = new LinkedHashMap<>();
-
-        SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd", Locale.ENGLISH);
-        String currentDay = df.format(new Date());
-        int hoursForecastsCount = 0;
-
-        for (int i = 0; i < jsonForecastsArray.length(); i++) {
-
-            JSONObject singleForecastJson = jsonForecastsArray.getJSONObject(i);
-
-            // Weather description is in a child array called "weather", which is 1 element long.
-            JSONObject weatherObject = singleForecastJson.getJSONArray(OWM_WEATHER).getJSONObject(0);
-
-            // Temperatures are sent by OpenWeatherMap in a child object called Main
-            JSONObject mainObject = singleForecastJson.getJSONObject(OWM_MAIN);
-
-            // Wind speed and direction are wrapped in a Wind object
-            JSONObject windObject = singleForecastJson.getJSONObject(OWM_WIND);
-
-            Forecast forecast = new Forecast();
-            forecast.setDt(singleForecastJson.getLong(OWM_DATE));
-            forecast.setDtTxt(singleForecastJson.getString(OWM_DATE_TEXT));
-            Main main = new Main();
-            main.setTemp(mainObject.getDouble(OWM_TEMPERATURE));
-            main.setTempMax(mainObject.getDouble(OWM_MAX));
-            main.setTempMin(mainObject.getDouble(OWM_MIN));
-            main.setHumidity(mainObject.getInt(OWM_HUMIDITY));
-            main.setPressure(mainObject.getLong(OWM_PRESSURE));
-            forecast.setMain(main);
-            Wind wind = new Wind();
-            wind.setSpeed(windObject.getDouble(OWM_WINDSPEED));
-            wind.setDeg(windObject.getLong(OWM_WIND_DIRECTION));
-            forecast.setWind(wind);
-            Weather weather = new Weather();
-            weather.setDescription(weatherObject.getString(OWM_WEATHER_DESCRIPTION));
-            weather.setIcon(weatherObject.getString(OWM_WEATHER_ICON));
-            List<Weather> weatherList = new ArrayList<>();
-            weatherList.add(weather);
-            forecast.setWeather(weatherList);
-
-            if (hoursForecastsCount++ < 8) {
-                hoursForecasts.add(forecast);
+        return groupForecasts(parseForecasts(forecastsJson));
+    }
+
+    /**
+     * Parses a forecast endpoint response limited to the first slots, it only fills the next
+     * 24hrs forecasts list and leaves the days forecasts list empty
+     *
+     * @param forecastsJson response json we got from OpenWeatherMap forecast endpoint
+     * @return Object of {@link ForecastLists} with the next 24hrs forecasts only
+     * @throws JSONException If JSON data cannot be properly parsed
+     */
+    public static ForecastLists getHoursForecastsFromJson(JSONObject forecastsJson) throws JSONException {
+
+        if (isError(forecastsJson)) {
+            return null;
+        }
+
+        List<Forecast> forecasts = parseForecasts(forecastsJson);
+        ForecastLists forecastsData = new ForecastLists();
+        forecastsData.setHoursForecasts(forecasts.size() > HOURS_FORECASTS_COUNT
+                ? new ArrayList<>(forecasts.subList(0, HOURS_FORECASTS_COUNT)) : forecasts);
+        forecastsData.setDaysForecasts(new ArrayList<List<Forecast>>());
+        return forecastsData;
+    }
+
+    /**
+     * Merges the first forecast slots received on their own with a full forecasts horizon. A slot
+     * present in both keeps the data of the first slots, and the slots of the full horizon that
+     * are older than the first slots are dropped.
+     *
+     * @param hoursForecasts forecasts with the next 24hrs forecasts only
+     * @param fullForecasts  forecasts with the whole horizon, possibly older
+     * @return forecasts with each slot once, ordered by time
+     */
+    public static ForecastLists mergeForecasts(ForecastLists hoursForecasts, ForecastLists fullForecasts) {
+
+        TreeMap<Long, Forecast> forecasts = new TreeMap<>();
+        for (Forecast forecast : fullForecasts.getHoursForecasts()) {
+            forecasts.put(forecast.getDt(), forecast);
+        }
+        for (List<Forecast> dayForecasts : fullForecasts.getDaysForecasts()) {
+            for (Forecast forecast : dayForecasts) {
+                forecasts.put(forecast.getDt(), forecast);
             }
+        }
+
+        List<Forecast> firstForecasts = hoursForecasts.getHoursForecasts();
+        if (!firstForecasts.isEmpty()) {
+            forecasts.headMap(firstForecasts.get(0).getDt()).clear();
+        }
+        for (Forecast forecast : firstForecasts) {
+            forecasts.put(forecast.getDt(), forecast);
+        }
+
+        return groupForecasts(new ArrayList<>(forecasts.values()));
+    }
+
+    /**
+     * Interface used to receive the forecast slots while the response is being parsed
+     */
+    public interface OnForecastParsedListener {
 
-            String date = forecast.getDtTxt().split(" ")[0];
+        /**
+         * Called on the parsing thread as soon as a slot is complete
+         *
+         * @param forecast the parsed forecast slot
+         * @param index    position of the slot in the response
+         */
+        void onForecastParsed(Forecast forecast, int index);
+
+    }
 
-            if (!date.equals(currentDay)) {
-                if (daysForecasts.containsKey(date)) {
-                    List<Forecast> forecasts = daysForecasts.get(date);
-                    assert forecasts != null;
-                    forecasts.add(forecast);
+    /**
+     * Parses a forecast endpoint response as it is read from the network, so that each slot is
+     * available before the rest of the body has arrived, without holding the whole body in memory.
+     *
+     * @param reader   reader of the response body
+     * @param listener listener to receive each slot as soon as it is parsed
+     * @return Object of {@link ForecastLists} contains two arrays, the first one for the next 24hrs forecast and the seconds
+     * for the next 4 days forecasts, null if the response is an error
+     * @throws IOException If the body cannot be read or isn't valid JSON
+     */
+    public static ForecastLists getForecastsDataFromReader(JsonReader reader, OnForecastParsedListener listener) throws IOException {
+
+        Tracer.beginSection("Parser.streamForecasts");
+        try {
+            List<Forecast> forecasts = new ArrayList<>();
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (OWM_MESSAGE_CODE.equals(name)) {
+                    // The status code comes first, an error body has no forecasts
+                    if (!String.valueOf(HttpURLConnection.HTTP_OK).equals(reader.nextString())) {
+                        Log.e(TAG, "Server probably down");
+                        return null;
+                    }
+                } else if (OWM_LIST.equals(name)) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        Forecast forecast = readForecast(reader);
+                        listener.onForecastParsed(forecast, forecasts.size());
+                        forecasts.add(forecast);
+                    }
+                    reader.endArray();
                 } else {
-                    List<Forecast> forecasts = new ArrayList<>();
-                    forecasts.add(forecast);
-                    daysForecasts.put(date, forecasts);
+                    reader.skipValue();
                 }
             }
+            reader.endObject();
 
+            return groupForecasts(forecasts);
+        } finally {
+            Tracer.endSection();
         }
+    }
 
-        ForecastLists forecastsData = new ForecastLists();
-        forecastsData.setHoursForecasts(hoursForecasts);
-        List<List<Forecast>> listOfDaysForecasts = new ArrayList<>();
-        for (Map.Entry entry : daysForecasts.entrySet()) {
-            listOfDaysForecasts.add((List<Forecast>) entry.getValue());
+    /**
+     * @param reader reader positioned at a forecast slot object
+     * @return the forecast slot
+     * @throws IOException If the slot cannot be read
+     */
+    private static Forecast readForecast(JsonReader reader) throws IOException {
+
+        Forecast forecast = new Forecast();
+        Main main = new Main();
+        Wind wind = new Wind();
+        List<Weather> weatherList = new ArrayList<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case OWM_DATE:
+                    forecast.setDt(reader.nextLong());
+                    break;
+                case OWM_DATE_TEXT:
+                    forecast.setDtTxt(reader.nextString());
+                    break;
+                case OWM_MAIN:
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case OWM_TEMPERATURE:
+                                main.setTemp(reader.nextDouble());
+                                break;
+                            case OWM_MAX:
+                                main.setTempMax(reader.nextDouble());
+                                break;
+                            case OWM_MIN:
+                                main.setTempMin(reader.nextDouble());
+                                break;
+                            case OWM_HUMIDITY:
+                                main.setHumidity(reader.nextInt());
+                                break;
+                            case OWM_PRESSURE:
+                                main.setPressure((long) reader.nextDouble());
+                                break;
+                            default:
+                                reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                case OWM_WIND:
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case OWM_WINDSPEED:
+                                wind.setSpeed(reader.nextDouble());
+                                break;
+                            case OWM_WIND_DIRECTION:
+                                wind.setDeg((long) reader.nextDouble());
+                                break;
+                            default:
+                                reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                case OWM_WEATHER:
+                    // Weather description is in a child array called "weather", which is 1 element long.
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        Weather weather = new Weather();
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            switch (reader.nextName()) {
+                                case OWM_WEATHER_ID:
+                                    weather.setId(reader.nextLong());
+                                    break;
+                                case OWM_WEATHER_DESCRIPTION:
+                                    weather.setDescription(reader.nextString());
+                                    break;
+                                case OWM_WEATHER_ICON:
+                                    weather.setIcon(reader.nextString());
+                                    break;
+                                default:
+                                    reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                        weatherList.add(weather);
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
         }
-        forecastsData.setDaysForecasts(listOfDaysForecasts);
+        reader.endObject();
 
-        return forecastsData;
+        forecast.setMain(main);
+        forecast.setWind(wind);
+        forecast.setWeather(weatherList);
+        return forecast;
+    }
+
+    /**
+     * @param forecastsJson response json we got from OpenWeatherMap forecast endpoint
+     * @return the forecast slots of the response, in the order they were received
+     * @throws JSONException If JSON data cannot be properly parsed
+     */
+    private static List<Forecast> parseForecasts(JSONObject forecastsJson) throws JSONException {
+
+        Tracer.beginSection("Parser.parseForecasts");
+        long allocations = Tracer.getThreadAllocations();
+        try {
+            JSONArray jsonForecastsArray = forecastsJson.getJSONArray(OWM_LIST);
+
+            List<Forecast> forecasts = new ArrayList<>(jsonForecastsArray.length());
+
+            for (int i = 0; i < jsonForecastsArray.length(); i++) {
+
+                JSONObject singleForecastJson = jsonForecastsArray.getJSONObject(i);
+
+                // Weather description is in a child array called "weather", which is 1 element long.
+                JSONObject weatherObject = singleForecastJson.getJSONArray(OWM_WEATHER).getJSONObject(0);
+
+                // Temperatures are sent by OpenWeatherMap in a child object called Main
+                JSONObject mainObject = singleForecastJson.getJSONObject(OWM_MAIN);
+
+                // Wind speed and direction are wrapped in a Wind object
+                JSONObject windObject = singleForecastJson.getJSONObject(OWM_WIND);
+
+                Forecast forecast = new Forecast();
+                forecast.setDt(singleForecastJson.getLong(OWM_DATE));
+                forecast.setDtTxt(singleForecastJson.getString(OWM_DATE_TEXT));
+                Main main = new Main();
+                main.setTemp(mainObject.getDouble(OWM_TEMPERATURE));
+                main.setTempMax(mainObject.getDouble(OWM_MAX));
+                main.setTempMin(mainObject.getDouble(OWM_MIN));
+                main.setHumidity(mainObject.getInt(OWM_HUMIDITY));
+                main.setPressure(mainObject.getLong(OWM_PRESSURE));
+                forecast.setMain(main);
+                Wind wind = new Wind();
+                wind.setSpeed(windObject.getDouble(OWM_WINDSPEED));
+                wind.setDeg(windObject.getLong(OWM_WIND_DIRECTION));
+                forecast.setWind(wind);
+                Weather weather = new Weather();
+                weather.setId(weatherObject.getLong(OWM_WEATHER_ID));
+                weather.setDescription(weatherObject.getString(OWM_WEATHER_DESCRIPTION));
+                weather.setIcon(weatherObject.getString(OWM_WEATHER_ICON));
+                List<Weather> weatherList = new ArrayList<>();
+                weatherList.add(weather);
+                forecast.setWeather(weatherList);
+
+                forecasts.add(forecast);
+            }
+
+            Tracer.setCounter("Parser.forecastSlots", forecasts.size());
+            Tracer.setCounter("Parser.parseForecasts allocations", Tracer.getThreadAllocations() - allocations);
+            return forecasts;
+        } finally {
+            Tracer.endSection();
+        }
+    }
+
+    /**
+     * @param forecasts forecast slots ordered by time
+     * @return Object of {@link ForecastLists} with the first slots as the next 24hrs forecasts and
+     * the slots of the following days grouped by day
+     */
+    private static ForecastLists groupForecasts(List<Forecast> forecasts) {
+
+        Tracer.beginSection("Parser.groupDays");
+        long allocations = Tracer.getThreadAllocations();
+        try {
+            List<Forecast> hoursForecasts = new ArrayList<>();
+            LinkedHashMap<String, List<Forecast>> daysForecasts = new LinkedHashMap<>();
+
+            SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd", Locale.ENGLISH);
+            String currentDay = df.format(new Date());
+            int hoursForecastsCount = 0;
+
+            for (Forecast forecast : forecasts) {
+
+                if (hoursForecastsCount++ < HOURS_FORECASTS_COUNT) {
+                    hoursForecasts.add(forecast);
+                }
+
+                String date = forecast.getDtTxt().split(" ")[0];
+
+                if (!date.equals(currentDay)) {
+                    if (daysForecasts.containsKey(date)) {
+                        List<Forecast> dayForecasts = daysForecasts.get(date);
+                        assert dayForecasts != null;
+                        dayForecasts.add(forecast);
+                    } else {
+                        List<Forecast> dayForecasts = new ArrayList<>();
+                        dayForecasts.add(forecast);
+                        daysForecasts.put(date, dayForecasts);
+                    }
+                }
+
+            }
+
+            ForecastLists forecastsData = new ForecastLists();
+            forecastsData.setHoursForecasts(hoursForecasts);
+            List<List<Forecast>> listOfDaysForecasts = new ArrayList<>();
+            for (Map.Entry entry : daysForecasts.entrySet()) {
+                listOfDaysForecasts.add((List<Forecast>) entry.getValue());
+            }
+            forecastsData.setDaysForecasts(listOfDaysForecasts);
+
+            Tracer.setCounter("Parser.days", listOfDaysForecasts.size());
+            Tracer.setCounter("Parser.groupDays allocations", Tracer.getThreadAllocations() - allocations);
+            return forecastsData;
+        } finally {
+            Tracer.endSection();
+        }
     }
 
 
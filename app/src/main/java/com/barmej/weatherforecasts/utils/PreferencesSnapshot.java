@@ -0,0 +1,69 @@
+package com.barmej.weatherforecasts.utils;
+
+/**
+ * An immutable copy of the user preferences read by the app hot paths. A new snapshot is
+ * published by {@link SharedPreferencesHelper} every time the preferences change, so a snapshot
+ * can be read from any thread without locking.
+ */
+public final class PreferencesSnapshot {
+
+    private final String location;
+    private final long locationId;
+    private final double[] locationCoordinates;
+    private final boolean metric;
+    private final int sunriseHour;
+    private final int sunsetHour;
+
+    PreferencesSnapshot(String location, long locationId, double[] locationCoordinates,
+                        boolean metric, int sunriseHour, int sunsetHour) {
+        this.location = location;
+        this.locationId = locationId;
+        this.locationCoordinates = locationCoordinates;
+        this.metric = metric;
+        this.sunriseHour = sunriseHour;
+        this.sunsetHour = sunsetHour;
+    }
+
+    /**
+     * @return the location text set in the preferences
+     */
+    public String getLocation() {
+        return location;
+    }
+
+    /**
+     * @return OpenWeatherMap city id of the location, 0 if unknown
+     */
+    public long getLocationId() {
+        return locationId;
+    }
+
+    /**
+     * @return latitude & longitude of the location, null if unknown
+     */
+    public double[] getLocationCoordinates() {
+        return locationCoordinates == null ? null : locationCoordinates.clone();
+    }
+
+    /**
+     * @return true if the metric system is selected, false if the imperial system is selected
+     */
+    public boolean isMetric() {
+        return metric;
+    }
+
+    /**
+     * @return sunrise hour in the day
+     */
+    public int getSunriseHour() {
+        return sunriseHour;
+    }
+
+    /**
+     * @return sunset hour in the day
+     */
+    public int getSunsetHour() {
+        return sunsetHour;
+    }
+
+}
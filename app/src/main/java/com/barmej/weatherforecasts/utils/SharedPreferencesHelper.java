@@ -5,6 +5,15 @@ import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
 
 import com.barmej.weatherforecasts.R;
+import com.barmej.weatherforecasts.concurrent.AppExecutors;
+import com.barmej.weatherforecasts.entity.City;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A helper class used to access SharedPreferences file and read user preferences
@@ -17,28 +26,126 @@ public final class SharedPreferencesHelper {
     private static final String PREF_SUNRISE_HOUR = "PREF_SUNRISE_HOUR";
     private static final String PREF_SUNSET_HOUR = "PREF_SUNSET_HOUR";
 
+    /*
+     * OpenWeatherMap city id & coordinates of the location, set when the location is picked from
+     * the offline city index or from the device location
+     */
+    private static final String PREF_LOCATION_ID = "PREF_LOCATION_ID";
+    private static final String PREF_LOCATION_LAT = "PREF_LOCATION_LAT";
+    private static final String PREF_LOCATION_LON = "PREF_LOCATION_LON";
+
+    /*
+     * Locations saved by the user, stored as a json array
+     */
+    private static final String PREF_SAVED_LOCATIONS = "PREF_SAVED_LOCATIONS";
+    private static final String SAVED_LOCATION_ID = "id";
+    private static final String SAVED_LOCATION_NAME = "name";
+    private static final String SAVED_LOCATION_COUNTRY = "country";
+    private static final String SAVED_LOCATION_LAT = "lat";
+    private static final String SAVED_LOCATION_LON = "lon";
+
 
     /**
-     * Helper method to handle setting sunrise hour in Preferences
+     * The last published snapshot of the preferences, null until it is loaded
+     */
+    private static volatile PreferencesSnapshot sSnapshot;
+
+    /**
+     * Republishes the snapshot when preferences change. SharedPreferences keeps its listeners in a
+     * weak map, so a strong reference is kept here
+     */
+    private static SharedPreferences.OnSharedPreferenceChangeListener sChangeListener;
+
+
+    /**
+     * Load the preferences snapshot on a background thread, so that the first reads on the main
+     * thread don't have to wait for the preferences file to be read
      *
      * @param context Context used to get the SharedPreferences
-     * @param hour    sunrise hour in the day
      */
-    public static void setSunriseHour(Context context, int hour) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-        sp.edit().putInt(PREF_SUNRISE_HOUR, hour).apply();
+    public static void preload(Context context) {
+        final Context applicationContext = context.getApplicationContext();
+        AppExecutors.getInstance().diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                getSnapshot(applicationContext);
+            }
+        });
     }
 
     /**
-     * Helper method to handle setting sunset hour in Preferences
+     * Returns the current snapshot of the preferences, loading it if it isn't loaded yet
      *
      * @param context Context used to get the SharedPreferences
-     * @param hour    sunset the hour in the day
+     * @return the current preferences snapshot
+     */
+    public static PreferencesSnapshot getSnapshot(Context context) {
+        PreferencesSnapshot snapshot = sSnapshot;
+        if (snapshot == null) {
+            snapshot = loadSnapshot(context.getApplicationContext());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Read the preferences once and keep the snapshot up to date when they change
+     *
+     * @param context application context
+     * @return the loaded snapshot
+     */
+    private static synchronized PreferencesSnapshot loadSnapshot(final Context context) {
+        if (sSnapshot == null) {
+            final SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+            sChangeListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+                    sSnapshot = readSnapshot(context, sharedPreferences);
+                }
+            };
+            sp.registerOnSharedPreferenceChangeListener(sChangeListener);
+            sSnapshot = readSnapshot(context, sp);
+        }
+        return sSnapshot;
+    }
+
+    /**
+     * @param context Context used to read the preference keys
+     * @param sp      the SharedPreferences to read
+     * @return a new snapshot of the preferences
      */
+    private static PreferencesSnapshot readSnapshot(Context context, SharedPreferences sp) {
+        String location = sp.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+        String units = sp.getString(context.getString(R.string.pref_units_key),
+                context.getString(R.string.pref_units_metric));
+        double[] coordinates = null;
+        if (sp.contains(PREF_LOCATION_LAT) && sp.contains(PREF_LOCATION_LON)) {
+            coordinates = new double[]{sp.getFloat(PREF_LOCATION_LAT, 0), sp.getFloat(PREF_LOCATION_LON, 0)};
+        }
+        return new PreferencesSnapshot(
+                location,
+                sp.getLong(PREF_LOCATION_ID, 0),
+                coordinates,
+                !units.equals(context.getString(R.string.pref_units_imperial)),
+                sp.getInt(PREF_SUNRISE_HOUR, 0),
+                sp.getInt(PREF_SUNSET_HOUR, 0));
+    }
 
-    public static void setSunsetHour(Context context, int hour) {
+    /**
+     * Helper method to handle setting sunrise & sunset hours in Preferences in a single write
+     *
+     * @param context     Context used to get the SharedPreferences
+     * @param sunriseHour sunrise hour in the day
+     * @param sunsetHour  sunset hour in the day
+     */
+    public static void setSunriseAndSunsetHours(Context context, int sunriseHour, int sunsetHour) {
+        PreferencesSnapshot snapshot = getSnapshot(context);
+        if (snapshot.getSunriseHour() == sunriseHour && snapshot.getSunsetHour() == sunsetHour) {
+            // Nothing changed, skip the write
+            return;
+        }
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-        sp.edit().putInt(PREF_SUNSET_HOUR, hour).apply();
+        sp.edit().putInt(PREF_SUNRISE_HOUR, sunriseHour).putInt(PREF_SUNSET_HOUR, sunsetHour).apply();
     }
 
     /**
@@ -46,8 +153,7 @@ public final class SharedPreferencesHelper {
      * @return sunrise hour in the day
      */
     public static int getSunriseHour(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-        return sp.getInt(PREF_SUNRISE_HOUR, 0);
+        return getSnapshot(context).getSunriseHour();
     }
 
     /**
@@ -55,8 +161,7 @@ public final class SharedPreferencesHelper {
      * @return sunset hour in the day
      */
     public static int getSunsetHour(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-        return sp.getInt(PREF_SUNSET_HOUR, 0);
+        return getSnapshot(context).getSunsetHour();
     }
 
 
@@ -68,24 +173,147 @@ public final class SharedPreferencesHelper {
      * @return Location the location set in SharedPreferences.
      */
     public static String getPreferredWeatherLocation(Context context) {
+        return getSnapshot(context).getLocation();
+    }
+
+    /**
+     * Check if the measurement system selected in the preferences is the metric system, which
+     * is the default
+     *
+     * @param context Context used to get the SharedPreferences
+     * @return true if the metric system is selected, false if the imperial system is selected
+     */
+    public static boolean isMetric(Context context) {
+        return getSnapshot(context).isMetric();
+    }
+
+    /**
+     * Save the city id & coordinates of the preferred location, or remove them when the location
+     * is typed as free text
+     *
+     * @param context Context used to get the SharedPreferences
+     * @param city    the city picked as location or null
+     */
+    public static void setPreferredLocationCity(Context context, City city) {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-        String locationKey = context.getString(R.string.pref_location_key);
-        String defaultLocation = context.getString(R.string.pref_location_default);
-        return sp.getString(locationKey, defaultLocation);
+        SharedPreferences.Editor editor = sp.edit();
+        putPreferredLocationCity(editor, city);
+        editor.apply();
+    }
+
+    /**
+     * @param editor editor to put the city id & coordinates in
+     * @param city   the city picked as location or null
+     */
+    private static void putPreferredLocationCity(SharedPreferences.Editor editor, City city) {
+        if (city == null) {
+            editor.remove(PREF_LOCATION_ID).remove(PREF_LOCATION_LAT).remove(PREF_LOCATION_LON);
+        } else {
+            editor.putLong(PREF_LOCATION_ID, city.getId())
+                    .putFloat(PREF_LOCATION_LAT, (float) city.getLat())
+                    .putFloat(PREF_LOCATION_LON, (float) city.getLon());
+        }
+    }
+
+    /**
+     * @param context Context used to get the SharedPreferences
+     * @return OpenWeatherMap city id of the preferred location, 0 if unknown
+     */
+    public static long getPreferredLocationId(Context context) {
+        return getSnapshot(context).getLocationId();
+    }
+
+    /**
+     * @param context Context used to get the SharedPreferences
+     * @return latitude & longitude of the preferred location, null if unknown
+     */
+    public static double[] getPreferredLocationCoordinates(Context context) {
+        return getSnapshot(context).getLocationCoordinates();
     }
 
     /**
-     * Returns the preferred measurement system set in Preferences. The default is metric
+     * Returns the preferred location as a City object, with an id of 0 and coordinates of 0 when
+     * they are unknown
      *
      * @param context Context used to get the SharedPreferences
-     * @return metric or imperial
+     * @return the preferred location
      */
-    public static String getPreferredMeasurementSystem(Context context) {
+    public static City getPreferredLocationCity(Context context) {
+        PreferencesSnapshot snapshot = getSnapshot(context);
+        City city = new City();
+        city.setId(snapshot.getLocationId());
+        city.setName(snapshot.getLocation());
+        double[] coordinates = snapshot.getLocationCoordinates();
+        if (coordinates != null) {
+            city.setLat(coordinates[0]);
+            city.setLon(coordinates[1]);
+        }
+        return city;
+    }
+
+    /**
+     * Make the given saved location the preferred location
+     *
+     * @param context Context used to get the SharedPreferences
+     * @param city    the saved location to use
+     */
+    public static void setPreferredWeatherLocation(Context context, City city) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences.Editor editor = sp.edit();
+        editor.putString(context.getString(R.string.pref_location_key), city.getName());
+        boolean isFreeText = city.getId() == 0 && city.getLat() == 0 && city.getLon() == 0;
+        putPreferredLocationCity(editor, isFreeText ? null : city);
+        editor.apply();
+    }
+
+    /**
+     * @param context Context used to get the SharedPreferences
+     * @return the locations saved by the user, in the order they were saved
+     */
+    public static List<City> getSavedLocations(Context context) {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-        String unitKey = context.getString(R.string.pref_units_key);
-        String defaultUnits = context.getString(R.string.pref_units_metric);
-        return sp.getString(unitKey, defaultUnits);
+        List<City> cities = new ArrayList<>();
+        try {
+            JSONArray locationsJson = new JSONArray(sp.getString(PREF_SAVED_LOCATIONS, "[]"));
+            for (int i = 0; i < locationsJson.length(); i++) {
+                JSONObject locationJson = locationsJson.getJSONObject(i);
+                City city = new City();
+                city.setId(locationJson.optLong(SAVED_LOCATION_ID));
+                city.setName(locationJson.getString(SAVED_LOCATION_NAME));
+                city.setCountry(locationJson.optString(SAVED_LOCATION_COUNTRY));
+                city.setLat(locationJson.optDouble(SAVED_LOCATION_LAT, 0));
+                city.setLon(locationJson.optDouble(SAVED_LOCATION_LON, 0));
+                cities.add(city);
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return cities;
     }
 
+    /**
+     * Helper method to handle saving the locations list in Preferences
+     *
+     * @param context Context used to get the SharedPreferences
+     * @param cities  the locations to save
+     */
+    public static void setSavedLocations(Context context, List<City> cities) {
+        JSONArray locationsJson = new JSONArray();
+        try {
+            for (City city : cities) {
+                JSONObject locationJson = new JSONObject();
+                locationJson.put(SAVED_LOCATION_ID, city.getId());
+                locationJson.put(SAVED_LOCATION_NAME, city.getName());
+                locationJson.put(SAVED_LOCATION_COUNTRY, city.getCountry());
+                locationJson.put(SAVED_LOCATION_LAT, city.getLat());
+                locationJson.put(SAVED_LOCATION_LON, city.getLon());
+                locationsJson.put(locationJson);
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        sp.edit().putString(PREF_SAVED_LOCATIONS, locationsJson.toString()).apply();
+    }
 
-}
\ No newline at end of file
+}
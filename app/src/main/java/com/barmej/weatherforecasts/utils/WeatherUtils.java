@@ -3,7 +3,13 @@ package com.barmej.weatherforecasts.utils;
 import android.content.Context;
 import android.util.Log;
 
+import androidx.core.os.ConfigurationCompat;
+
 import com.barmej.weatherforecasts.R;
+import com.barmej.weatherforecasts.cache.FormattedStringCache;
+import com.barmej.weatherforecasts.entity.Weather;
+
+import java.util.Locale;
 
 /**
  * Contains useful utilities for a weather app, such as formatting wind speed to show correct unit
@@ -14,12 +20,81 @@ public final class WeatherUtils {
 
     private static final String LOG_TAG = WeatherUtils.class.getSimpleName();
 
+    /**
+     * Factors used to convert wind speed from meter/sec (the canonical unit we store) to km/h and mph
+     */
+    private static final double MPS_TO_KMH = 3.6;
+    private static final double MPS_TO_MPH = 2.236936;
+
+    /**
+     * Formatted temperatures keyed by their rounded value, lists show the same few values
+     * over and over
+     */
+    private static final FormattedStringCache sTemperatureStrings = new FormattedStringCache(128);
+
+    /**
+     * @return the cache of formatted temperatures, to be registered for memory trimming
+     */
+    public static FormattedStringCache getTemperatureStringsCache() {
+        return sTemperatureStrings;
+    }
+
+    /**
+     * Check if the measurement system selected in the preferences is the metric system
+     *
+     * @param context Context to access preferences and resources
+     * @return true if the metric system is selected, false if the imperial system is selected
+     */
+    private static boolean isMetric(Context context) {
+        return SharedPreferencesHelper.isMetric(context);
+    }
+
+    /**
+     * Convert a temperature from Celsius (the canonical unit we store) to the measurement system
+     * selected by the user in the preferences
+     *
+     * @param context            Context to access preferences and resources
+     * @param temperatureCelsius temperature in Celsius
+     * @return temperature in Celsius or Fahrenheit depending on the user preference
+     */
+    public static double convertTemperature(Context context, double temperatureCelsius) {
+        if (isMetric(context)) {
+            return temperatureCelsius;
+        }
+        return temperatureCelsius * 9 / 5 + 32;
+    }
+
+    /**
+     * Format a temperature in the measurement system selected by the user, e.g "21°"
+     *
+     * @param context            Context to access preferences and resources
+     * @param temperatureCelsius temperature in Celsius
+     * @return formatted temperature String
+     */
+    public static String getFormattedTemperature(Context context, double temperatureCelsius) {
+        double temperature = convertTemperature(context, temperatureCelsius);
+
+        // The format shows no decimals, so the string only depends on the rounded value & its sign
+        long rounded = Math.round(Math.abs(temperature));
+        boolean negative = Math.copySign(1, temperature) < 0;
+        long key = rounded << 1 | (negative ? 1 : 0);
+
+        Locale locale = ConfigurationCompat.getLocales(context.getResources().getConfiguration()).get(0);
+        String formattedTemperature = sTemperatureStrings.get(locale, key);
+        if (formattedTemperature == null) {
+            double roundedTemperature = negative ? -(double) rounded : rounded;
+            formattedTemperature = context.getString(R.string.format_temperature, roundedTemperature);
+            sTemperatureStrings.put(locale, key, formattedTemperature);
+        }
+        return formattedTemperature;
+    }
+
     /**
      * This method uses the wind direction in degrees to determine compass direction as a
      * String. (eg NW) The method will return the wind String in the following form: "2 km/h SW"
      *
      * @param context   Context to access preferences and resources
-     * @param windSpeed Wind speed per hour
+     * @param windSpeed Wind speed in meter/sec
      * @param degrees   Degrees as measured on a compass, NOT temperature degrees!
      *                  See https://www.mathsisfun.com/geometry/degrees.html
      * @return Wind String in the following form: "2 km/h SW"
@@ -27,11 +102,12 @@ public final class WeatherUtils {
     public static String getFormattedWind(Context context, double windSpeed, double degrees) {
 
         int windStringFormat = R.string.format_wind_kmh;
+        double convertedWindSpeed = windSpeed * MPS_TO_KMH;
 
         // If the imperial system selected, use the mph unit
-        String preferredMeasurementSystem = SharedPreferencesHelper.getPreferredMeasurementSystem(context);
-        if (preferredMeasurementSystem.equals(context.getString(R.string.pref_units_imperial))) {
+        if (!isMetric(context)) {
             windStringFormat = R.string.format_wind_mph;
+            convertedWindSpeed = windSpeed * MPS_TO_MPH;
         }
 
         String direction = context.getString(R.string.unknown_direction);
@@ -55,7 +131,7 @@ public final class WeatherUtils {
         } else if (degrees >= 292.5 && degrees < 337.5) {
             direction = context.getString(R.string.north_west);
         }
-        return String.format(context.getString(windStringFormat), windSpeed, direction);
+        return String.format(context.getString(windStringFormat), convertedWindSpeed, direction);
     }
 
     /**
@@ -115,5 +191,153 @@ public final class WeatherUtils {
 
     }
 
+    /**
+     * Get the localized description of a weather condition from the bundled string resources.
+     * Conditions are identified by the numeric condition id returned from OpenWeatherMap, so the
+     * stored data does not depend on the language of the device.
+     *
+     * @param context Context to access resources
+     * @param weather Weather object that holds the condition id
+     * @return localized weather condition description
+     */
+    public static String getWeatherCondition(Context context, Weather weather) {
+        int conditionStringId = getWeatherConditionStringId(weather.getId());
+        if (conditionStringId == R.string.condition_unknown && weather.getDescription() != null) {
+            // Fallback to the description sent by the API for condition ids we don't know yet
+            return weather.getDescription();
+        }
+        return context.getString(conditionStringId);
+    }
+
+    /**
+     * Helper method to provide the string resource ID according to the weather condition id
+     * returned from OpenWeatherMap
+     *
+     * @param weatherConditionId condition id from OpenWeatherMap API response
+     *                           See http://openweathermap.org/weather-conditions for a list of all ids
+     * @return string resource ID for the corresponding condition id
+     */
+    private static int getWeatherConditionStringId(long weatherConditionId) {
+
+        /*
+         * Based on weather condition ids of Open Weather Map.
+         */
+        switch ((int) weatherConditionId) {
+            case 200:
+                return R.string.condition_200;
+            case 201:
+                return R.string.condition_201;
+            case 202:
+                return R.string.condition_202;
+            case 210:
+                return R.string.condition_210;
+            case 211:
+                return R.string.condition_211;
+            case 212:
+                return R.string.condition_212;
+            case 221:
+                return R.string.condition_221;
+            case 230:
+                return R.string.condition_230;
+            case 231:
+                return R.string.condition_231;
+            case 232:
+                return R.string.condition_232;
+            case 300:
+                return R.string.condition_300;
+            case 301:
+                return R.string.condition_301;
+            case 302:
+                return R.string.condition_302;
+            case 310:
+                return R.string.condition_310;
+            case 311:
+                return R.string.condition_311;
+            case 312:
+                return R.string.condition_312;
+            case 313:
+                return R.string.condition_313;
+            case 314:
+                return R.string.condition_314;
+            case 321:
+                return R.string.condition_321;
+            case 500:
+                return R.string.condition_500;
+            case 501:
+                return R.string.condition_501;
+            case 502:
+                return R.string.condition_502;
+            case 503:
+                return R.string.condition_503;
+            case 504:
+                return R.string.condition_504;
+            case 511:
+                return R.string.condition_511;
+            case 520:
+                return R.string.condition_520;
+            case 521:
+                return R.string.condition_521;
+            case 522:
+                return R.string.condition_522;
+            case 531:
+                return R.string.condition_531;
+            case 600:
+                return R.string.condition_600;
+            case 601:
+                return R.string.condition_601;
+            case 602:
+                return R.string.condition_602;
+            case 611:
+                return R.string.condition_611;
+            case 612:
+                return R.string.condition_612;
+            case 613:
+                return R.string.condition_613;
+            case 615:
+                return R.string.condition_615;
+            case 616:
+                return R.string.condition_616;
+            case 620:
+                return R.string.condition_620;
+            case 621:
+                return R.string.condition_621;
+            case 622:
+                return R.string.condition_622;
+            case 701:
+                return R.string.condition_701;
+            case 711:
+                return R.string.condition_711;
+            case 721:
+                return R.string.condition_721;
+            case 731:
+                return R.string.condition_731;
+            case 741:
+                return R.string.condition_741;
+            case 751:
+                return R.string.condition_751;
+            case 761:
+                return R.string.condition_761;
+            case 762:
+                return R.string.condition_762;
+            case 771:
+                return R.string.condition_771;
+            case 781:
+                return R.string.condition_781;
+            case 800:
+                return R.string.condition_800;
+            case 801:
+                return R.string.condition_801;
+            case 802:
+                return R.string.condition_802;
+            case 803:
+                return R.string.condition_803;
+            case 804:
+                return R.string.condition_804;
+        }
+
+        Log.e(LOG_TAG, "Unknown Weather Condition: " + weatherConditionId);
+        return R.string.condition_unknown;
+
+    }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,28 @@
+package com.barmej.weatherforecasts;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Allocations counted by the JVM running the local tests, for the benchmarks and harnesses that
+ * report the bytes allocated by the measured code
+ */
+public final class Allocations {
+
+    private Allocations() {
+    }
+
+    /**
+     * Take the count before & after some code to get the bytes it allocates
+     *
+     * @return bytes allocated by the current thread, -1 if the JVM doesn't count them
+     */
+    public static long getThreadAllocatedBytes() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+}
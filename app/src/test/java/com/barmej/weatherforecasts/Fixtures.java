@@ -0,0 +1,47 @@
+package com.barmej.weatherforecasts;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Recorded OpenWeatherMap responses of the fixtures folder of the test resources:
+ * <ul>
+ * <li>weather.json: current weather of Kuwait City</li>
+ * <li>forecast.json: the 40 forecasts of 3 hours of Kuwait City</li>
+ * <li>group.json: current weather of 5 cities</li>
+ * </ul>
+ */
+public final class Fixtures {
+
+    public static final String WEATHER = "weather.json";
+    public static final String FORECAST = "forecast.json";
+    public static final String GROUP = "group.json";
+
+    private Fixtures() {
+    }
+
+    /**
+     * @param name name of a fixture, e.g {@link #FORECAST}
+     * @return content of the fixture
+     * @throws IOException if the fixture is missing or can't be read
+     */
+    public static String read(String name) throws IOException {
+        InputStream inputStream = Fixtures.class.getClassLoader().getResourceAsStream("fixtures/" + name);
+        if (inputStream == null) {
+            throw new IOException("Missing fixture " + name);
+        }
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+            return outputStream.toString("UTF-8");
+        } finally {
+            inputStream.close();
+        }
+    }
+
+}
@@ -0,0 +1,215 @@
+package com.barmej.weatherforecasts.adapters;
+
+import android.app.Application;
+import android.content.Context;
+import android.view.ContextThemeWrapper;
+
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.barmej.weatherforecasts.Allocations;
+import com.barmej.weatherforecasts.Fixtures;
+import com.barmej.weatherforecasts.R;
+import com.barmej.weatherforecasts.entity.Forecast;
+import com.barmej.weatherforecasts.entity.ForecastLists;
+import com.barmej.weatherforecasts.utils.CustomDateUtils;
+import com.barmej.weatherforecasts.utils.OpenWeatherDataParser;
+import com.barmej.weatherforecasts.utils.WeatherUtils;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks of the forecast adapters on the JVM, binding the rows of the recorded forecast
+ * {@link Fixtures} without a device, to compare the bind cost before and after a change of the
+ * adapters or of the utils they call.
+ * <p>
+ * Each benchmark runs warm up passes, then measured passes over all the rows. By default it only
+ * runs a single pass to check the rows are bound with the fixture data, a benchmark run is asked
+ * with the number of measured passes and prints the mean time and the bytes allocated per row
+ * on the test thread, e.g
+ * {@code ./gradlew testDebugUnitTest --tests '*AdapterBindBenchmarkTest' -i
+ * -PadapterBenchmark.passes=200}. The numbers come from Robolectric on the JVM: compare them
+ * between runs on the same machine, not with a device. The tests only fail when the rows aren't
+ * bound with the fixture data.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(application = Application.class)
+public class AdapterBindBenchmarkTest {
+
+    private static final String PROPERTY_PASSES = "adapterBenchmark.passes";
+
+    /**
+     * Measured passes when no benchmark run is asked, enough to bind every row
+     */
+    private static final int DEFAULT_PASSES = 1;
+
+    private Context mContext;
+    private RecyclerView mParent;
+    private List<Forecast> mHoursForecasts;
+    private List<List<Forecast>> mDaysForecasts;
+
+    @Before
+    public void setUp() throws Exception {
+        // The lists are shown by MainActivity, inflate their rows with its theme
+        mContext = new ContextThemeWrapper(RuntimeEnvironment.getApplication(), R.style.MainActivityTheme);
+        mParent = new RecyclerView(mContext);
+        mParent.setLayoutManager(new LinearLayoutManager(mContext));
+        ForecastLists forecastLists = OpenWeatherDataParser.getForecastsDataFromJson(new JSONObject(Fixtures.read(Fixtures.FORECAST)));
+        mHoursForecasts = forecastLists.getHoursForecasts();
+        mDaysForecasts = forecastLists.getDaysForecasts();
+        assertFalse(mHoursForecasts.isEmpty());
+        assertFalse(mDaysForecasts.isEmpty());
+    }
+
+    @Test
+    public void hoursBind() {
+        final HoursForecastAdapter adapter = new HoursForecastAdapter(mContext);
+        adapter.updateData(mHoursForecasts);
+        final HoursForecastAdapter.ForecastAdapterViewHolder viewHolder = adapter.createViewHolder(mParent, 0);
+        measure("hours bind", adapter.getItemCount(), new Runnable() {
+            @Override
+            public void run() {
+                for (int position = 0; position < adapter.getItemCount(); position++) {
+                    adapter.bindViewHolder(viewHolder, position);
+                }
+            }
+        });
+        Forecast lastForecast = mHoursForecasts.get(mHoursForecasts.size() - 1);
+        assertEquals(CustomDateUtils.getHourOfDay(lastForecast.getDt()), viewHolder.timeTextView.getText().toString());
+    }
+
+    @Test
+    public void hoursCreateAndBind() {
+        final HoursForecastAdapter adapter = new HoursForecastAdapter(mContext);
+        adapter.updateData(mHoursForecasts);
+        measure("hours create+bind", adapter.getItemCount(), new Runnable() {
+            @Override
+            public void run() {
+                for (int position = 0; position < adapter.getItemCount(); position++) {
+                    adapter.bindViewHolder(adapter.createViewHolder(mParent, 0), position);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void daysBind() {
+        final DaysForecastAdapter adapter = new DaysForecastAdapter(mContext);
+        adapter.updateData(mDaysForecasts);
+        final DaysForecastAdapter.ForecastAdapterViewHolder viewHolder = adapter.createViewHolder(mParent, 0);
+        measure("days bind", adapter.getItemCount(), new Runnable() {
+            @Override
+            public void run() {
+                for (int position = 0; position < adapter.getItemCount(); position++) {
+                    adapter.bindViewHolder(viewHolder, position);
+                }
+            }
+        });
+        Forecast lastForecast = mDaysForecasts.get(mDaysForecasts.size() - 1).get(0);
+        assertEquals(WeatherUtils.getFormattedTemperature(mContext, lastForecast.getMain().getTempMin()),
+                viewHolder.lowTempTextView.getText().toString());
+    }
+
+    @Test
+    public void daysCreateAndBind() {
+        final DaysForecastAdapter adapter = new DaysForecastAdapter(mContext);
+        adapter.updateData(mDaysForecasts);
+        measure("days create+bind", adapter.getItemCount(), new Runnable() {
+            @Override
+            public void run() {
+                for (int position = 0; position < adapter.getItemCount(); position++) {
+                    adapter.bindViewHolder(adapter.createViewHolder(mParent, 0), position);
+                }
+            }
+        });
+    }
+
+    /**
+     * The utils called by the adapters on each row, measured per forecast of the hours list
+     */
+    @Test
+    public void utils() {
+        measure("CustomDateUtils.getHourOfDay", mHoursForecasts.size(), new Runnable() {
+            @Override
+            public void run() {
+                for (Forecast forecast : mHoursForecasts) {
+                    CustomDateUtils.getHourOfDay(forecast.getDt());
+                }
+            }
+        });
+        measure("CustomDateUtils.getFriendlyDateString", mHoursForecasts.size(), new Runnable() {
+            @Override
+            public void run() {
+                for (Forecast forecast : mHoursForecasts) {
+                    CustomDateUtils.getFriendlyDateString(mContext, forecast.getDt(), false);
+                }
+            }
+        });
+        measure("WeatherUtils.getWeatherIcon", mHoursForecasts.size(), new Runnable() {
+            @Override
+            public void run() {
+                for (Forecast forecast : mHoursForecasts) {
+                    WeatherUtils.getWeatherIcon(forecast.getWeather().get(0).getIcon());
+                }
+            }
+        });
+        measure("WeatherUtils.getWeatherCondition", mHoursForecasts.size(), new Runnable() {
+            @Override
+            public void run() {
+                for (Forecast forecast : mHoursForecasts) {
+                    WeatherUtils.getWeatherCondition(mContext, forecast.getWeather().get(0));
+                }
+            }
+        });
+        measure("WeatherUtils.getFormattedTemperature", mHoursForecasts.size(), new Runnable() {
+            @Override
+            public void run() {
+                for (Forecast forecast : mHoursForecasts) {
+                    WeatherUtils.getFormattedTemperature(mContext, forecast.getMain().getTempMax());
+                }
+            }
+        });
+    }
+
+    /**
+     * Run the warm up & measured passes, and print the mean time & allocations per row of a
+     * benchmark run
+     *
+     * @param name name of the benchmark
+     * @param rows number of rows of a pass
+     * @param pass a pass over the rows
+     */
+    private static void measure(String name, int rows, Runnable pass) {
+        String passesProperty = System.getProperty(PROPERTY_PASSES);
+        int measuredPasses = passesProperty != null ? Integer.parseInt(passesProperty) : DEFAULT_PASSES;
+        // A quarter of the passes warm up the JIT
+        for (int i = 0; i < measuredPasses / 4; i++) {
+            pass.run();
+        }
+        long startBytes = Allocations.getThreadAllocatedBytes();
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < measuredPasses; i++) {
+            pass.run();
+        }
+        long nanos = System.nanoTime() - startNanos;
+        long bytes = Allocations.getThreadAllocatedBytes() - startBytes;
+        if (passesProperty == null) {
+            return;
+        }
+        long measuredRows = (long) rows * measuredPasses;
+        System.out.println(String.format(Locale.US, "%-40s %10.2f µs/row %10s bytes/row", name,
+                nanos / 1000.0 / measuredRows, startBytes < 0 ? "n/a" : String.valueOf(bytes / measuredRows)));
+    }
+
+}
@@ -0,0 +1,208 @@
+package com.barmej.weatherforecasts.concurrent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of {@link TaskScope} & {@link SerialExecutor}, callbacks are delivered on the
+ * test thread by a direct executor
+ */
+public class TaskScopeTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private ExecutorService mPool;
+
+    @Before
+    public void setUp() {
+        mPool = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        mPool.shutdownNow();
+    }
+
+    @Test
+    public void submit_deliversResult() throws InterruptedException {
+        TaskScope scope = new TaskScope(DIRECT);
+        RecordingCallback<Integer> callback = new RecordingCallback<>();
+
+        scope.submit(mPool, new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return 42;
+            }
+        }, callback);
+
+        assertTrue(callback.await());
+        assertEquals(Integer.valueOf(42), callback.result);
+        assertNull(callback.error);
+    }
+
+    @Test
+    public void submit_deliversException() throws InterruptedException {
+        TaskScope scope = new TaskScope(DIRECT);
+        RecordingCallback<Integer> callback = new RecordingCallback<>();
+
+        scope.submit(mPool, new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                throw new Exception("parse failed");
+            }
+        }, callback);
+
+        assertTrue(callback.await());
+        assertEquals("parse failed", callback.error.getMessage());
+    }
+
+    @Test
+    public void cancel_interruptsRunningTaskAndDropsResult() throws InterruptedException {
+        TaskScope scope = new TaskScope(DIRECT);
+        RecordingCallback<Integer> callback = new RecordingCallback<>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+
+        scope.submit(mPool, new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                started.countDown();
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return 1;
+            }
+        }, callback);
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        scope.cancel();
+
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertFalse(callback.await());
+    }
+
+    @Test
+    public void cancel_runsCancelActionsOnce() {
+        TaskScope scope = new TaskScope(DIRECT);
+        final AtomicInteger cancelCount = new AtomicInteger();
+        Runnable action = new Runnable() {
+            @Override
+            public void run() {
+                cancelCount.incrementAndGet();
+            }
+        };
+
+        scope.onCancel(action);
+        scope.cancel();
+        scope.cancel();
+        assertEquals(1, cancelCount.get());
+
+        // Added after the cancellation, runs right away
+        scope.onCancel(action);
+        assertEquals(2, cancelCount.get());
+        assertTrue(scope.isCancelled());
+    }
+
+    @Test
+    public void submit_afterCancel_isIgnored() throws InterruptedException {
+        TaskScope scope = new TaskScope(DIRECT);
+        final AtomicBoolean ran = new AtomicBoolean();
+        RecordingCallback<Integer> callback = new RecordingCallback<>();
+
+        scope.cancel();
+        scope.submit(mPool, new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                ran.set(true);
+                return 1;
+            }
+        }, callback);
+
+        assertFalse(callback.await());
+        assertFalse(ran.get());
+    }
+
+    @Test
+    public void serialExecutor_runsTasksOneAtATimeInOrder() throws InterruptedException {
+        SerialExecutor executor = new SerialExecutor(mPool);
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicBoolean overlapped = new AtomicBoolean();
+        final CountDownLatch done = new CountDownLatch(20);
+
+        for (int i = 0; i < 20; i++) {
+            final int task = i;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (running.incrementAndGet() > 1) {
+                        overlapped.set(true);
+                    }
+                    order.add(task);
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(overlapped.get());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(Integer.valueOf(i), order.get(i));
+        }
+    }
+
+    /**
+     * Callback recording its outcome
+     */
+    private static class RecordingCallback<T> implements TaskScope.Callback<T> {
+
+        private final CountDownLatch mDelivered = new CountDownLatch(1);
+
+        T result;
+        Exception error;
+
+        @Override
+        public void onResult(T result) {
+            this.result = result;
+            mDelivered.countDown();
+        }
+
+        @Override
+        public void onError(Exception e) {
+            this.error = e;
+            mDelivered.countDown();
+        }
+
+        /**
+         * @return true if the outcome was delivered within a short delay
+         */
+        boolean await() throws InterruptedException {
+            return mDelivered.await(500, TimeUnit.MILLISECONDS);
+        }
+
+    }
+
+}
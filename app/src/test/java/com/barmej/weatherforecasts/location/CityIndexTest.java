@@ -0,0 +1,227 @@
+package com.barmej.weatherforecasts.location;
+
+import android.app.Application;
+
+import com.barmej.weatherforecasts.entity.City;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of {@link CityIndex} over small indexes built by {@link CityIndexBuilder} from
+ * generated city lists
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(application = Application.class)
+public class CityIndexTest {
+
+    /**
+     * Number of generated towns, enough for many blocks of keys
+     */
+    private static final int TOWN_COUNT = 300;
+
+    /**
+     * Number of cities of the search latency test, about the size of the OpenWeatherMap city list
+     */
+    private static final int LARGE_CITY_COUNT = 200000;
+
+    /**
+     * Median prefix search latency target
+     */
+    private static final long MAX_MEDIAN_SEARCH_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private JSONArray mCities;
+    private CityIndex mCityIndex;
+
+    @Before
+    public void setUp() throws Exception {
+        mCities = new JSONArray();
+        mCities.put(city(285787, "Al Kuwayt", "KW", 29.37, 47.98).put("langs",
+                new JSONArray().put(new JSONObject().put("ar", "الكويت"))));
+        mCities.put(city(3448439, "São Paulo", "BR", -23.55, -46.64));
+        Random random = new Random(42);
+        for (int i = 0; i < TOWN_COUNT; i++) {
+            mCities.put(city(1000 + i, String.format(Locale.US, "Town %03d", i), "XX",
+                    random.nextDouble() * 160 - 80, random.nextDouble() * 360 - 180));
+        }
+        mCityIndex = buildIndex(mCities);
+    }
+
+    @Test
+    public void prefixSearchSpansBlocks() {
+        List<City> cities = mCityIndex.search("town 1", 500);
+        assertEquals(100, cities.size());
+        for (int i = 0; i < cities.size(); i++) {
+            assertEquals(String.format(Locale.US, "Town %03d", 100 + i), cities.get(i).getName());
+        }
+    }
+
+    @Test
+    public void searchStopsAtTheLimit() {
+        List<City> cities = mCityIndex.search("Town", 5);
+        assertEquals(5, cities.size());
+        assertEquals("Town 000", cities.get(0).getName());
+        assertEquals("Town 004", cities.get(4).getName());
+    }
+
+    @Test
+    public void searchWithoutMatches() {
+        assertTrue(mCityIndex.search("aaa", 10).isEmpty());
+        assertTrue(mCityIndex.search("zzz", 10).isEmpty());
+        assertTrue(mCityIndex.search("town 3", 10).isEmpty());
+        assertTrue(mCityIndex.search(" - ", 10).isEmpty());
+    }
+
+    @Test
+    public void searchIsNormalized() {
+        City saoPaulo = single(mCityIndex.search("SAO p", 10));
+        assertEquals(3448439, saoPaulo.getId());
+        assertEquals("São Paulo", saoPaulo.getName());
+        assertEquals("BR", saoPaulo.getCountry());
+        // With and without the article, in English & Arabic
+        assertEquals(285787, single(mCityIndex.search("al kuw", 10)).getId());
+        assertEquals(285787, single(mCityIndex.search("Kuwayt", 10)).getId());
+        assertEquals(285787, single(mCityIndex.search("الكو", 10)).getId());
+        assertEquals(285787, single(mCityIndex.search("كويت", 10)).getId());
+    }
+
+    @Test
+    public void prefixSearchLatencyOnAFullSizeIndex() throws Exception {
+        Random random = new Random(11);
+        JSONArray cities = new JSONArray();
+        String[] names = new String[LARGE_CITY_COUNT];
+        for (int i = 0; i < LARGE_CITY_COUNT; i++) {
+            char[] name = new char[5 + random.nextInt(8)];
+            for (int j = 0; j < name.length; j++) {
+                name[j] = (char) ('a' + random.nextInt(26));
+            }
+            names[i] = new String(name);
+            cities.put(city(i + 1, names[i], "XX", random.nextDouble() * 160 - 80, random.nextDouble() * 360 - 180));
+        }
+        CityIndex cityIndex = buildIndex(cities);
+
+        // Short prefixes match many keys, longer ones few, search both
+        long[] latencies = new long[400];
+        for (int run = -100; run < latencies.length; run++) {
+            String name = names[random.nextInt(LARGE_CITY_COUNT)];
+            String prefix = name.substring(0, 2 + random.nextInt(name.length() - 1));
+            long start = System.nanoTime();
+            List<City> result = cityIndex.search(prefix, 10);
+            long latency = System.nanoTime() - start;
+            assertFalse(result.isEmpty());
+            if (run >= 0) {
+                // The first runs warm up the JIT
+                latencies[run] = latency;
+            }
+        }
+        Arrays.sort(latencies);
+        long median = latencies[latencies.length / 2];
+        System.out.println(String.format(Locale.US, "Prefix search over %d cities: p50 %.3f ms, p99 %.3f ms",
+                LARGE_CITY_COUNT, median / 1e6, latencies[latencies.length * 99 / 100] / 1e6));
+        assertTrue("Median prefix search took " + median + "ns", median < MAX_MEDIAN_SEARCH_NANOS);
+    }
+
+    @Test
+    public void nearestMatchesBruteForce() throws JSONException {
+        Random random = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            double lat = random.nextDouble() * 180 - 90;
+            double lon = random.nextDouble() * 360 - 180;
+            assertEquals("Nearest city to " + lat + "," + lon,
+                    nearestByBruteForce(mCities, lat, lon), mCityIndex.findNearest(lat, lon).getId());
+        }
+    }
+
+    @Test
+    public void nearestAcrossTheAntimeridian() throws Exception {
+        JSONArray westOfQuery = new JSONArray();
+        westOfQuery.put(city(2198148, "Suva", "FJ", -18.14, 178.44));
+        westOfQuery.put(city(4033936, "Papeete", "PF", -17.53, -149.57));
+        // Suva is 1.6 degrees of longitude to the west, Papeete 30 to the east
+        assertEquals("Suva", buildIndex(westOfQuery).findNearest(-18, -179.9).getName());
+
+        JSONArray eastOfQuery = new JSONArray();
+        eastOfQuery.put(city(2110257, "Honiara", "SB", -9.43, 159.95));
+        eastOfQuery.put(city(4035413, "Apia", "WS", -13.83, -171.76));
+        // Apia is 8.3 degrees of longitude to the east, Honiara 20 to the west
+        assertEquals("Apia", buildIndex(eastOfQuery).findNearest(-14, 179.9).getName());
+    }
+
+    @Test
+    public void emptyCityList() throws Exception {
+        CityIndex cityIndex = buildIndex(new JSONArray());
+        assertTrue(cityIndex.search("town", 10).isEmpty());
+        assertNull(cityIndex.findNearest(0, 0));
+    }
+
+    private CityIndex buildIndex(JSONArray cities) throws IOException {
+        File indexFile = new File(mFolder.newFolder(), "cities.idx");
+        CityIndexBuilder.build(new ByteArrayInputStream(cities.toString().getBytes(Charset.forName("UTF-8"))), indexFile);
+        return new CityIndex(RuntimeEnvironment.getApplication(), indexFile);
+    }
+
+    private static JSONObject city(long id, String name, String country, double lat, double lon) throws JSONException {
+        return new JSONObject()
+                .put("id", id)
+                .put("name", name)
+                .put("country", country)
+                .put("coord", new JSONObject().put("lat", lat).put("lon", lon));
+    }
+
+    private static City single(List<City> cities) {
+        assertEquals(1, cities.size());
+        return cities.get(0);
+    }
+
+    /**
+     * @return id of the nearest city with the distance of the index: equirectangular, longitudes
+     * scaled by the cosine of the latitude and wrapped around the antimeridian
+     */
+    private static long nearestByBruteForce(JSONArray cities, double lat, double lon) throws JSONException {
+        double lonScale = Math.cos(Math.toRadians(lat));
+        long nearestId = -1;
+        double nearestDistance = Double.MAX_VALUE;
+        for (int i = 0; i < cities.length(); i++) {
+            JSONObject city = cities.getJSONObject(i);
+            JSONObject coord = city.getJSONObject("coord");
+            // The index stores floats
+            double deltaLat = lat - (float) coord.getDouble("lat");
+            double deltaLon = Math.abs(lon - (float) coord.getDouble("lon"));
+            if (deltaLon > 180) {
+                deltaLon = 360 - deltaLon;
+            }
+            deltaLon *= lonScale;
+            double distance = deltaLat * deltaLat + deltaLon * deltaLon;
+            if (distance < nearestDistance) {
+                nearestDistance = distance;
+                nearestId = city.getLong("id");
+            }
+        }
+        return nearestId;
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.barmej.weatherforecasts.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of {@link Footprint}, the expected sizes follow the ART layout it models
+ */
+public class FootprintTest {
+
+    /**
+     * A model object: header 8, int 4, two references 8 = 20, aligned on 24
+     */
+    private static class Node {
+
+        int value;
+        String name;
+        Node next;
+
+        Node(int value, String name) {
+            this.value = value;
+            this.name = name;
+        }
+
+    }
+
+    @Test
+    public void strings() {
+        // Header, length & hash 16, then 1 byte per ASCII character
+        assertEquals(16, Footprint.sizeOf(""));
+        assertEquals(24, Footprint.sizeOf("Kuwait"));
+        // 2 bytes per character when any isn't ASCII
+        assertEquals(32, Footprint.sizeOf("الكويت"));
+    }
+
+    @Test
+    public void arrays() {
+        assertEquals(16, Footprint.sizeOf(new int[1]));
+        assertEquals(56, Footprint.sizeOf(new double[5]));
+        // The array and its 2 strings
+        assertEquals(24 + 24 + 24, Footprint.sizeOf((Object) new String[]{"Cairo", "Dubai"}));
+    }
+
+    @Test
+    public void objects() {
+        assertEquals(24, Footprint.sizeOf(new Node(1, null)));
+        assertEquals(24 + 24, Footprint.sizeOf(new Node(1, "Amman")));
+    }
+
+    @Test
+    public void sharedObjectsAreCountedOnce() {
+        String name = "Riyadh";
+        Node first = new Node(1, name);
+        Node second = new Node(2, name);
+        first.next = second;
+        assertEquals(3 * 24, Footprint.sizeOf(first));
+        // From several roots
+        assertEquals(3 * 24, Footprint.sizeOf(first, second, name));
+        Footprint footprint = new Footprint().add(first).add(second);
+        assertEquals(3 * 24, footprint.getSize());
+        assertEquals(3, footprint.getObjectCount());
+    }
+
+    @Test
+    public void cycles() {
+        Node first = new Node(1, null);
+        Node second = new Node(2, null);
+        first.next = second;
+        second.next = first;
+        assertEquals(2 * 24, Footprint.sizeOf(first));
+    }
+
+    @Test
+    public void collections() {
+        List<Node> nodes = new ArrayList<>(Arrays.asList(new Node(1, null), new Node(2, null)));
+        // List 24, backing array 12 + 2 * 4 aligned on 24, the nodes
+        assertEquals(24 + 24 + 2 * 24, Footprint.sizeOf(nodes));
+        // The same nodes in another list are only counted once
+        List<Node> copy = new ArrayList<>(nodes);
+        assertEquals(24 + 24 + 2 * 24 + 24 + 24, Footprint.sizeOf(nodes, copy));
+
+        Map<String, Node> map = new HashMap<>();
+        map.put("a", nodes.get(0));
+        assertTrue(Footprint.sizeOf(map) > Footprint.sizeOf("a", nodes.get(0)));
+    }
+
+    @Test
+    public void nullsAndEnumsAreIgnored() {
+        assertEquals(0, Footprint.sizeOf((Object) null));
+        assertEquals(0, Footprint.sizeOf(Thread.State.NEW));
+    }
+
+    @Test
+    public void breakdownListsEachClass() {
+        Footprint footprint = new Footprint().add(new Node(1, "Dubai"));
+        String breakdown = footprint.toString();
+        assertTrue(breakdown, breakdown.startsWith("48 bytes in 2 objects"));
+        assertTrue(breakdown, breakdown.contains(Node.class.getName()));
+        assertTrue(breakdown, breakdown.contains(String.class.getName()));
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.barmej.weatherforecasts.utils;
+
+import com.barmej.weatherforecasts.Fixtures;
+import com.barmej.weatherforecasts.cache.WeatherDataCache;
+import com.barmej.weatherforecasts.entity.ForecastLists;
+import com.barmej.weatherforecasts.entity.WeatherInfo;
+import com.barmej.weatherforecasts.metrics.Footprint;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Memory budgets of the parsed model of the recorded {@link Fixtures}, to catch changes of the
+ * parser or the entities that make a location heavier.
+ * <p>
+ * The budgets are the measured sizes of the {@link Footprint} model plus about 15%, when an
+ * optimization lowers a size its budget should be lowered too.
+ */
+public class ParsedModelFootprintTest {
+
+    /*
+     * Budgets in bytes, measured: 304 for the weather, 11432 for the 40 forecasts, 11736 for a
+     * location and 1544 for the 5 cities of the group
+     */
+    private static final long WEATHER_INFO_BUDGET = 352;
+    private static final long FORECAST_LISTS_BUDGET = 13184;
+    private static final long LOCATION_BUDGET = 13504;
+    private static final long GROUP_CITY_BUDGET = 360;
+
+    /**
+     * Tolerance of the size estimates of WeatherDataCache, relative to the measured size
+     */
+    private static final double ESTIMATE_TOLERANCE = 0.1;
+
+    private static JSONObject sWeatherJson;
+    private static JSONObject sForecastJson;
+    private static JSONObject sGroupJson;
+
+    @BeforeClass
+    public static void loadFixtures() throws IOException, JSONException {
+        sWeatherJson = new JSONObject(Fixtures.read(Fixtures.WEATHER));
+        sForecastJson = new JSONObject(Fixtures.read(Fixtures.FORECAST));
+        sGroupJson = new JSONObject(Fixtures.read(Fixtures.GROUP));
+    }
+
+    @Test
+    public void weatherInfo() throws JSONException {
+        WeatherInfo weatherInfo = OpenWeatherDataParser.getWeatherInfoObjectFromJson(sWeatherJson);
+        assertWithinBudget(WEATHER_INFO_BUDGET, new Footprint().add(weatherInfo));
+    }
+
+    @Test
+    public void forecastLists() throws JSONException {
+        ForecastLists forecastLists = OpenWeatherDataParser.getForecastsDataFromJson(sForecastJson);
+        assertWithinBudget(FORECAST_LISTS_BUDGET, new Footprint().add(forecastLists));
+    }
+
+    @Test
+    public void location() throws JSONException {
+        // What a location costs in WeatherDataCache
+        WeatherInfo weatherInfo = OpenWeatherDataParser.getWeatherInfoObjectFromJson(sWeatherJson);
+        ForecastLists forecastLists = OpenWeatherDataParser.getForecastsDataFromJson(sForecastJson);
+        assertWithinBudget(LOCATION_BUDGET, new Footprint().add(weatherInfo).add(forecastLists));
+    }
+
+    @Test
+    public void groupPerCity() throws JSONException {
+        List<WeatherInfo> weatherInfoList = OpenWeatherDataParser.getWeatherInfoListFromGroupJson(sGroupJson);
+        assertEquals(5, weatherInfoList.size());
+        Footprint footprint = new Footprint().add(weatherInfoList);
+        assertWithinBudget(GROUP_CITY_BUDGET * weatherInfoList.size(), footprint);
+    }
+
+    @Test
+    public void hoursAndDaysShareTheirForecasts() throws JSONException {
+        ForecastLists forecastLists = OpenWeatherDataParser.getForecastsDataFromJson(sForecastJson);
+        long hoursSize = Footprint.sizeOf(forecastLists.getHoursForecasts());
+        long daysSize = Footprint.sizeOf(forecastLists.getDaysForecasts());
+        assertTrue(Footprint.sizeOf(forecastLists) < hoursSize + daysSize);
+    }
+
+    @Test
+    public void cacheEstimatesMatchTheMeasuredSizes() throws JSONException {
+        WeatherInfo weatherInfo = OpenWeatherDataParser.getWeatherInfoObjectFromJson(sWeatherJson);
+        assertEstimate(Footprint.sizeOf(weatherInfo), WeatherDataCache.WEATHER_INFO_SIZE_BYTES);
+
+        ForecastLists forecastLists = OpenWeatherDataParser.getForecastsDataFromJson(sForecastJson);
+        assertEstimate(Footprint.sizeOf(forecastLists), WeatherDataCache.estimateSize(forecastLists));
+
+        // Fresh hours merged into the horizon, as cached by putMergedForecastLists
+        ForecastLists hoursForecastLists = OpenWeatherDataParser.getHoursForecastsFromJson(sForecastJson);
+        ForecastLists mergedForecastLists = OpenWeatherDataParser.mergeForecasts(hoursForecastLists, forecastLists);
+        assertEstimate(Footprint.sizeOf(mergedForecastLists), WeatherDataCache.estimateSize(mergedForecastLists));
+    }
+
+    private static void assertEstimate(long measuredSize, int estimatedSize) {
+        assertEquals("Estimated " + estimatedSize + " bytes, measured " + measuredSize,
+                1, (double) estimatedSize / measuredSize, ESTIMATE_TOLERANCE);
+    }
+
+    private static void assertWithinBudget(long budget, Footprint footprint) {
+        assertTrue("Over the budget of " + budget + " bytes: " + footprint, footprint.getSize() <= budget);
+    }
+
+}
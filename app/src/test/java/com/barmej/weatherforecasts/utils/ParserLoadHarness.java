@@ -0,0 +1,256 @@
+package com.barmej.weatherforecasts.utils;
+
+import com.barmej.weatherforecasts.Allocations;
+import com.barmej.weatherforecasts.Fixtures;
+import com.barmej.weatherforecasts.entity.Forecast;
+import com.barmej.weatherforecasts.entity.ForecastLists;
+import com.barmej.weatherforecasts.entity.WeatherInfo;
+import com.barmej.weatherforecasts.metrics.LatencyHistogram;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replays the recorded weather & forecast {@link Fixtures} of synthetic cities through
+ * {@link OpenWeatherDataParser}, from the json text to the forecasts grouped by day, on a number
+ * of threads, to see how the parsing scales before running it for many cities at once.
+ * <p>
+ * Each synthetic city has its own id, name and temperatures, the payloads are built before the
+ * runs so only the parsing is measured. A run parses every city once, the threads take the next
+ * city from a shared counter and record into their own histogram. The result of each city is
+ * reduced to a checksum and compared with the first run, a mismatch means that threads share
+ * some state of the parser.
+ * <p>
+ * An instance isn't thread safe, runs are started from one thread.
+ */
+final class ParserLoadHarness {
+
+    /**
+     * Percentiles shown in the report
+     */
+    private static final double[] PERCENTILES = {50, 90, 99};
+
+    private final String[] mWeatherPayloads;
+    private final String[] mForecastPayloads;
+
+    /**
+     * Checksums of the cities from the first run, null until then
+     */
+    private long[] mExpectedChecksums;
+
+    /**
+     * Throughput of the run on 1 thread, 0 until then
+     */
+    private double mSingleThreadThroughput;
+
+    /**
+     * @param cityCount number of synthetic cities
+     * @throws IOException   if the fixtures can't be read
+     * @throws JSONException if the fixtures aren't valid
+     */
+    ParserLoadHarness(int cityCount) throws IOException, JSONException {
+        mWeatherPayloads = new String[cityCount];
+        mForecastPayloads = new String[cityCount];
+        String weather = Fixtures.read(Fixtures.WEATHER);
+        String forecast = Fixtures.read(Fixtures.FORECAST);
+        for (int city = 0; city < cityCount; city++) {
+            double temperatureOffset = city % 40 - 20;
+
+            JSONObject weatherJson = new JSONObject(weather);
+            weatherJson.put("id", city);
+            weatherJson.put("name", "City " + city);
+            offsetTemperatures(weatherJson.getJSONObject("main"), temperatureOffset);
+            mWeatherPayloads[city] = weatherJson.toString();
+
+            JSONObject forecastJson = new JSONObject(forecast);
+            forecastJson.getJSONObject("city").put("id", city).put("name", "City " + city);
+            JSONArray list = forecastJson.getJSONArray("list");
+            for (int i = 0; i < list.length(); i++) {
+                offsetTemperatures(list.getJSONObject(i).getJSONObject("main"), temperatureOffset);
+            }
+            mForecastPayloads[city] = forecastJson.toString();
+        }
+    }
+
+    /**
+     * Parse every city once on the given number of threads
+     *
+     * @param threadCount number of threads
+     * @return the stats of the run
+     * @throws InterruptedException if interrupted while waiting for the threads
+     * @throws ExecutionException   if a city can't be parsed
+     */
+    Result run(final int threadCount) throws InterruptedException, ExecutionException {
+        final int cityCount = mWeatherPayloads.length;
+        final long[] checksums = new long[cityCount];
+        final AtomicInteger nextCity = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        List<Future<Worker>> futures = new ArrayList<>(threadCount);
+        try {
+            for (int i = 0; i < threadCount; i++) {
+                futures.add(executor.submit(new Callable<Worker>() {
+                    @Override
+                    public Worker call() throws Exception {
+                        Worker worker = new Worker();
+                        start.await();
+                        long startBytes = Allocations.getThreadAllocatedBytes();
+                        int city;
+                        while ((city = nextCity.getAndIncrement()) < cityCount) {
+                            long startNanos = System.nanoTime();
+                            checksums[city] = parse(city);
+                            worker.latencies.record(System.nanoTime() - startNanos);
+                        }
+                        worker.allocatedBytes = startBytes < 0 ? -1 : Allocations.getThreadAllocatedBytes() - startBytes;
+                        return worker;
+                    }
+                }));
+            }
+            long startNanos = System.nanoTime();
+            start.countDown();
+            Result result = new Result(threadCount, cityCount);
+            for (Future<Worker> future : futures) {
+                Worker worker = future.get();
+                result.latencies.add(worker.latencies);
+                result.allocatedBytes = worker.allocatedBytes < 0 || result.allocatedBytes < 0
+                        ? -1 : result.allocatedBytes + worker.allocatedBytes;
+            }
+            result.elapsedNanos = System.nanoTime() - startNanos;
+
+            if (mExpectedChecksums == null) {
+                mExpectedChecksums = checksums;
+            } else {
+                for (int city = 0; city < cityCount; city++) {
+                    if (checksums[city] != mExpectedChecksums[city]) {
+                        result.mismatches++;
+                    }
+                }
+            }
+            if (threadCount == 1) {
+                mSingleThreadThroughput = result.getThroughput();
+            }
+            result.singleThreadThroughput = mSingleThreadThroughput;
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param city index of a synthetic city
+     * @return checksum of the parsed data of the city
+     */
+    private long parse(int city) throws JSONException {
+        WeatherInfo weatherInfo = OpenWeatherDataParser.getWeatherInfoObjectFromJson(new JSONObject(mWeatherPayloads[city]));
+        ForecastLists forecastLists = OpenWeatherDataParser.getForecastsDataFromJson(new JSONObject(mForecastPayloads[city]));
+
+        long checksum = weatherInfo.getId() * 31 + Double.doubleToLongBits(weatherInfo.getMain().getTemp());
+        checksum = checksum * 31 + weatherInfo.getName().hashCode();
+        checksum = checksum * 31 + checksum(forecastLists.getHoursForecasts());
+        for (List<Forecast> dayForecasts : forecastLists.getDaysForecasts()) {
+            checksum = checksum * 31 + checksum(dayForecasts);
+        }
+        return checksum;
+    }
+
+    private static long checksum(List<Forecast> forecasts) {
+        long checksum = forecasts.size();
+        for (Forecast forecast : forecasts) {
+            checksum = checksum * 31 + forecast.getDt();
+            checksum = checksum * 31 + Double.doubleToLongBits(forecast.getMain().getTempMax());
+            checksum = checksum * 31 + forecast.getWeather().get(0).getIcon().hashCode();
+        }
+        return checksum;
+    }
+
+    private static void offsetTemperatures(JSONObject main, double offset) throws JSONException {
+        main.put("temp", main.getDouble("temp") + offset);
+        main.put("temp_min", main.getDouble("temp_min") + offset);
+        main.put("temp_max", main.getDouble("temp_max") + offset);
+    }
+
+    /**
+     * Stats recorded by one thread of a run
+     */
+    private static final class Worker {
+
+        final LatencyHistogram latencies = new LatencyHistogram();
+        long allocatedBytes;
+
+    }
+
+    /**
+     * Stats of a run
+     */
+    static final class Result {
+
+        final int threadCount;
+        final int cityCount;
+        final LatencyHistogram latencies = new LatencyHistogram();
+        long elapsedNanos;
+        long allocatedBytes;
+        double singleThreadThroughput;
+        int mismatches;
+
+        Result(int threadCount, int cityCount) {
+            this.threadCount = threadCount;
+            this.cityCount = cityCount;
+        }
+
+        /**
+         * @return parsed cities per second
+         */
+        double getThroughput() {
+            return cityCount * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * @return throughput divided by the throughput on 1 thread and the number of threads, 1
+         * when the threads don't slow each other down, 0 when there's no run on 1 thread yet
+         */
+        double getScalingEfficiency() {
+            return singleThreadThroughput == 0 ? 0 : getThroughput() / singleThreadThroughput / threadCount;
+        }
+
+        /**
+         * @return header of the rows of {@link #toString()}
+         */
+        static String header() {
+            return String.format(Locale.US, "%7s %10s %9s %9s %9s %9s %10s %10s %6s %10s",
+                    "threads", "cities/s", "p50 ms", "p90 ms", "p99 ms", "max ms", "alloc MB/s", "KB/city", "eff", "mismatches");
+        }
+
+        @Override
+        public String toString() {
+            double seconds = elapsedNanos / 1e9;
+            StringBuilder builder = new StringBuilder(String.format(Locale.US, "%7d %10.0f", threadCount, getThroughput()));
+            for (double percentile : PERCENTILES) {
+                builder.append(String.format(Locale.US, " %9.3f", latencies.getPercentileMicros(percentile) / 1000.0));
+            }
+            builder.append(String.format(Locale.US, " %9.3f", latencies.getMaxMicros() / 1000.0));
+            if (allocatedBytes < 0) {
+                builder.append(String.format(Locale.US, " %10s %10s", "n/a", "n/a"));
+            } else {
+                builder.append(String.format(Locale.US, " %10.1f %10.1f", allocatedBytes / seconds / 1e6, allocatedBytes / 1024.0 / cityCount));
+            }
+            builder.append(String.format(Locale.US, " %6.2f %10d", getScalingEfficiency(), mismatches));
+            return builder.toString();
+        }
+
+    }
+
+}
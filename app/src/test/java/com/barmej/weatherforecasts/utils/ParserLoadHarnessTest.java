@@ -0,0 +1,51 @@
+package com.barmej.weatherforecasts.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the {@link ParserLoadHarness} and prints a row of stats per number of threads. It fails
+ * when a city parsed on several threads doesn't give the same data as on 1 thread.
+ * <p>
+ * It replays a few cities on 1 & 2 threads by default, a load run is configured with system
+ * properties, e.g
+ * {@code ./gradlew testDebugUnitTest --tests '*ParserLoadHarnessTest' -i
+ * -PloadHarness.cities=5000 -PloadHarness.threads=1,2,4,8}
+ */
+public class ParserLoadHarnessTest {
+
+    private static final String PROPERTY_CITIES = "loadHarness.cities";
+    private static final String PROPERTY_THREADS = "loadHarness.threads";
+
+    @Test
+    public void replay() throws Exception {
+        int cityCount = Integer.parseInt(System.getProperty(PROPERTY_CITIES, "200"));
+        List<Integer> threadCounts = new ArrayList<>();
+        // The efficiency of each run is relative to the run on 1 thread, run it first
+        threadCounts.add(1);
+        for (String threads : System.getProperty(PROPERTY_THREADS, "1,2").split(",")) {
+            int threadCount = Integer.parseInt(threads.trim());
+            if (!threadCounts.contains(threadCount)) {
+                threadCounts.add(threadCount);
+            }
+        }
+
+        ParserLoadHarness harness = new ParserLoadHarness(cityCount);
+        // Warm up the JIT and record the expected data of each city
+        harness.run(1);
+
+        System.out.println(String.format("%d cities, %d cores", cityCount, Runtime.getRuntime().availableProcessors()));
+        System.out.println(ParserLoadHarness.Result.header());
+        for (int threadCount : threadCounts) {
+            ParserLoadHarness.Result result = harness.run(threadCount);
+            System.out.println(result);
+            assertEquals(cityCount, result.latencies.getCount());
+            assertEquals("Cities parsed differently on " + threadCount + " threads", 0, result.mismatches);
+        }
+    }
+
+}